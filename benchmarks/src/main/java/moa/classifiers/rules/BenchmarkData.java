@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2017 Thien Le, Frederic Stahl - University of Reading, UK
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package moa.classifiers.rules;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import moa.classifiers.rules.GeRules.Rule;
+import moa.classifiers.rules.GeRules.RuleTerm;
+import moa.streams.generators.RandomRBFGenerator;
+import moa.streams.generators.RandomTreeGenerator;
+import weka.core.Attribute;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.converters.ConverterUtils.DataSource;
+
+// Data for the benchmarks: instances from an ARFF file ("cmc") or from the MOA
+// RandomTreeGenerator ("randomTree") and RandomRBFGenerator ("randomRBF") streams,
+// and synthetic rules to fill a rules library to a given size.
+final class BenchmarkData {
+
+	private BenchmarkData(){
+	}
+
+	// numAttributes and numClasses only apply to the generated streams, an ARFF file is
+	// repeated if it has less than numInstances instances
+	static List<Instance> instances(String source, String arffFile, int numInstances, int numAttributes, int numClasses) throws Exception {
+
+		List<Instance> instances = new ArrayList<>(numInstances);
+
+		if(source.equals("cmc")){
+
+			Instances data = new DataSource(arffFile).getDataSet();
+			if(data.classIndex() == -1){
+				data.setClassIndex(data.numAttributes() - 1);
+			}
+			List<Instance> fileInstances = Collections.list(data.enumerateInstances());
+			for (int i = 0; i < numInstances; i++) {
+				instances.add(fileInstances.get(i % fileInstances.size()));
+			}
+		}
+		else if(source.equals("randomTree")){
+
+			RandomTreeGenerator treeGenerator = new RandomTreeGenerator();
+			treeGenerator.numClassesOption.setValue(numClasses);
+			treeGenerator.numNominalsOption.setValue(numAttributes / 2);
+			treeGenerator.numNumericsOption.setValue(numAttributes - numAttributes / 2);
+			treeGenerator.prepareForUse();
+			for (int i = 0; i < numInstances; i++) {
+				instances.add(treeGenerator.nextInstance());
+			}
+		}
+		else if(source.equals("randomRBF")){
+
+			RandomRBFGenerator rbfGenerator = new RandomRBFGenerator();
+			rbfGenerator.numClassesOption.setValue(numClasses);
+			rbfGenerator.numAttsOption.setValue(numAttributes);
+			rbfGenerator.prepareForUse();
+			for (int i = 0; i < numInstances; i++) {
+				instances.add(rbfGenerator.nextInstance());
+			}
+		}
+		else{
+			throw new IllegalArgumentException("Unknown benchmark data source: " + source);
+		}
+
+		return instances;
+	}
+
+	// add noOfRules rules with two terms each, every rule covering a randomly picked instance
+	static void fillRulesLibrary(GeRules geRules, List<Instance> instances, int noOfRules, long seed){
+
+		Random random = new Random(seed);
+		List<Rule> rules = new ArrayList<>(noOfRules);
+
+		for (int i = 0; i < noOfRules; i++) {
+
+			Instance instance = instances.get(random.nextInt(instances.size()));
+			List<Attribute> attributes = Collections.list(instance.enumerateAttributes());
+
+			Rule rule = geRules.new Rule(instance.numClasses(), instance.classValue(), instance.classAttribute(), 0);
+
+			for (int j = 0; j < 2 && j < attributes.size(); j++) {
+
+				Attribute attribute = attributes.get(random.nextInt(attributes.size()));
+				double value = instance.value(attribute);
+
+				if(attribute.isNominal()){
+					rule.addRuleTerm(geRules.new RuleTerm(attribute, value));
+				}else{
+					double width = Math.abs(value) * 0.1d + 1.0e-3d;
+					rule.addRuleTerm(geRules.new RuleTerm(attribute, value - width, value + width));
+				}
+			}
+			rules.add(rule);
+		}
+
+		geRules.addRulesToLibrary(rules);
+	}
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2017 Thien Le, Frederic Stahl - University of Reading, UK
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package moa.classifiers.rules;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+import moa.classifiers.rules.GeRules.PrismClassifier;
+import moa.classifiers.rules.GeRules.Rule;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import weka.core.Instance;
+
+// Time of one PrismClassifier induction over a full window, for different window
+// sizes, numbers of attributes and numbers of class labels.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class InductionBenchmark {
+
+	@Param({"randomTree", "randomRBF"})
+	String source;
+
+	@Param({"500", "2000", "5000"})
+	int windowSize;
+
+	@Param({"10", "50", "200"})
+	int numAttributes;
+
+	@Param({"2", "5", "20"})
+	int numClasses;
+
+	@Param({"data/cmc.arff"})
+	String arffFile;
+
+	WindowStore window;
+	PrismClassifier prismClassifier;
+
+	@Setup(Level.Trial)
+	public void prepareWindow() throws Exception {
+
+		GeRules geRules = new GeRules();
+		geRules.prepareForUse();
+		prismClassifier = geRules.new PrismClassifier();
+
+		window = new WindowStore(windowSize);
+		for (Instance instance : BenchmarkData.instances(source, arffFile, windowSize, numAttributes, numClasses)) {
+			window.add(instance);
+		}
+	}
+
+	@Benchmark
+	public ArrayList<Rule> learnRules(){
+		return prismClassifier.induceRules(window, window.gaussianStatistics(), 0);
+	}
+}
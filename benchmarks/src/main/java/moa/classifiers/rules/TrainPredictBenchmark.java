@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2017 Thien Le, Frederic Stahl - University of Reading, UK
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package moa.classifiers.rules;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import weka.core.Instance;
+
+// Per-instance throughput of training and prediction for different rules library sizes.
+// The library is filled with synthetic rules before each iteration, training then adds
+// and removes rules as usual.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TrainPredictBenchmark {
+
+	@Param({"cmc", "randomTree", "randomRBF"})
+	String source;
+
+	@Param({"0", "100", "1000", "5000"})
+	int ruleLibrarySize;
+
+	@Param({"500"})
+	int slidingWindowsSize;
+
+	// attributes and classes of the generated streams
+	@Param({"20"})
+	int numAttributes;
+
+	@Param({"5"})
+	int numClasses;
+
+	@Param({"data/cmc.arff"})
+	String arffFile;
+
+	List<Instance> instances;
+	GeRules geRules;
+	int nextInstance;
+
+	@Setup(Level.Trial)
+	public void loadInstances() throws Exception {
+		instances = BenchmarkData.instances(source, arffFile, 20000, numAttributes, numClasses);
+	}
+
+	@Setup(Level.Iteration)
+	public void prepareClassifier(){
+		geRules = new GeRules();
+		geRules.slidingWindowsSizeOption.setValue(slidingWindowsSize);
+		geRules.prepareForUse();
+		BenchmarkData.fillRulesLibrary(geRules, instances, ruleLibrarySize, 1L);
+		nextInstance = 0;
+	}
+
+	private Instance nextInstance(){
+		Instance instance = instances.get(nextInstance);
+		nextInstance = (nextInstance + 1) % instances.size();
+		return instance;
+	}
+
+	@Benchmark
+	public void trainOnInstance(){
+		geRules.trainOnInstanceImpl(nextInstance());
+	}
+
+	@Benchmark
+	public double[] getVotesForInstance(){
+		return geRules.getVotesForInstance(nextInstance());
+	}
+}
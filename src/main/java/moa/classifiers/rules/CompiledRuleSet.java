@@ -0,0 +1,351 @@
+/*
+ * Copyright (C) 2017 Thien Le, Frederic Stahl - University of Reading, UK
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package moa.classifiers.rules;
+
+import java.util.Arrays;
+import java.util.List;
+import moa.classifiers.rules.GeRules.Rule;
+import moa.classifiers.rules.GeRules.RuleTerm;
+import weka.core.Instance;
+import weka.core.Instances;
+
+// The rules library flattened into primitive arrays for prediction. Rule terms are
+// grouped by attribute, so each attribute used by any rule is read once per instance
+// and tested against all its terms in a tight loop, failing rules are marked in a
+// bitset over rule positions. Votes of the remaining rules are then added in one pass.
+// A compiled rule set is rebuilt when rules are added, removed rules are only masked.
+// For concurrent prediction a compiled rule set is treated as an immutable snapshot:
+// withoutRule returns a new version sharing the term arrays instead of masking in place.
+// Callers which must not allocate per instance pass their own bitset of failed rules.
+public class CompiledRuleSet {
+
+	// no. of instances of a block evaluated together, one bit per instance
+	static final int BLOCK_SIZE = 64;
+
+	// version of the rules library the rule set was compiled from
+	final long version;
+
+	// rules in rules library order
+	Rule[] rules;
+	long[] ruleIds;
+	int[] ruleClasses;
+	int noRules;
+
+	// rules removed from the library since the rule set was compiled, one bit per rule
+	long[] removedRules;
+
+	// distinct attribute indices tested by the rules and whether they are nominal
+	int[] attributeIndices;
+	boolean[] nominalAttributes;
+
+	// terms of the attribute at position i are at positions attributeTermStarts[i]
+	// up to attributeTermStarts[i + 1] (exclusive) of the term arrays
+	int[] attributeTermStarts;
+
+	// position of the rule of each term, nominal terms hold the value index as lower
+	// bound, numeric terms are in form: lower < value <= upper
+	int[] termRules;
+	double[] termLowerBounds;
+	double[] termUpperBounds;
+
+	public CompiledRuleSet(List<Rule> rules){
+		this(rules, 0);
+	}
+
+	public CompiledRuleSet(List<Rule> rules, long versionIn){
+
+		version = versionIn;
+		noRules = rules.size();
+		this.rules = rules.toArray(new Rule[noRules]);
+		ruleIds = new long[noRules];
+		ruleClasses = new int[noRules];
+		removedRules = new long[words(noRules)];
+
+		// count terms per attribute index
+		int maxAttributeIndex = -1;
+		int noTerms = 0;
+		for (Rule rule : rules) {
+			for (RuleTerm ruleTerm : rule.listOfRuleTerm) {
+				maxAttributeIndex = Math.max(maxAttributeIndex, ruleTerm.attribute.index());
+				noTerms++;
+			}
+		}
+		int[] termsOfAttribute = new int[maxAttributeIndex + 1];
+		boolean[] nominalAttribute = new boolean[maxAttributeIndex + 1];
+		int noAttributes = 0;
+		for (Rule rule : rules) {
+			for (RuleTerm ruleTerm : rule.listOfRuleTerm) {
+				int index = ruleTerm.attribute.index();
+				if(termsOfAttribute[index]++ == 0){
+					noAttributes++;
+				}
+				nominalAttribute[index] = ruleTerm.attribute_type == RuleTerm.CATEGORICAL_ATTRIBUTE;
+			}
+		}
+
+		// lay out the attributes in ascending index order
+		attributeIndices = new int[noAttributes];
+		nominalAttributes = new boolean[noAttributes];
+		attributeTermStarts = new int[noAttributes + 1];
+		int[] nextTermOfAttribute = new int[maxAttributeIndex + 1];
+		int position = 0;
+		for (int index = 0; index <= maxAttributeIndex; index++) {
+			if(termsOfAttribute[index] == 0){
+				continue;
+			}
+			attributeIndices[position] = index;
+			nominalAttributes[position] = nominalAttribute[index];
+			nextTermOfAttribute[index] = attributeTermStarts[position];
+			attributeTermStarts[position + 1] = attributeTermStarts[position] + termsOfAttribute[index];
+			position++;
+		}
+
+		termRules = new int[noTerms];
+		termLowerBounds = new double[noTerms];
+		termUpperBounds = new double[noTerms];
+		for (int rulePosition = 0; rulePosition < noRules; rulePosition++) {
+
+			Rule rule = rules.get(rulePosition);
+			ruleIds[rulePosition] = rule.ruleId;
+			ruleClasses[rulePosition] = (int) rule.classification;
+
+			for (RuleTerm ruleTerm : rule.listOfRuleTerm) {
+				int term = nextTermOfAttribute[ruleTerm.attribute.index()]++;
+				termRules[term] = rulePosition;
+				if(ruleTerm.attribute_type == RuleTerm.CATEGORICAL_ATTRIBUTE){
+					termLowerBounds[term] = ruleTerm.value;
+				}else{
+					termLowerBounds[term] = ruleTerm.numericLowerBound;
+					termUpperBounds[term] = ruleTerm.numericUpperBound;
+				}
+			}
+		}
+	}
+
+	// same rules and terms with other removed rules
+	private CompiledRuleSet(CompiledRuleSet other, long[] removedRulesIn, long versionIn){
+
+		version = versionIn;
+		rules = other.rules;
+		ruleIds = other.ruleIds;
+		ruleClasses = other.ruleClasses;
+		noRules = other.noRules;
+		removedRules = removedRulesIn;
+		attributeIndices = other.attributeIndices;
+		nominalAttributes = other.nominalAttributes;
+		attributeTermStarts = other.attributeTermStarts;
+		termRules = other.termRules;
+		termLowerBounds = other.termLowerBounds;
+		termUpperBounds = other.termUpperBounds;
+	}
+
+	public long version(){
+		return version;
+	}
+
+	// new version of the rule set with the rule masked, this rule set is left unchanged
+	public CompiledRuleSet withoutRule(Rule rule, long versionIn){
+
+		long[] updatedRemovedRules = Arrays.copyOf(removedRules, removedRules.length);
+		int rulePosition = Arrays.binarySearch(ruleIds, 0, noRules, rule.ruleId);
+		if(rulePosition >= 0){
+			updatedRemovedRules[rulePosition >>> 6] |= 1L << rulePosition;
+		}
+		return new CompiledRuleSet(this, updatedRemovedRules, versionIn);
+	}
+
+	// mask a rule removed from the rules library, false if it is not part of this rule set
+	public boolean remove(Rule rule){
+
+		int rulePosition = Arrays.binarySearch(ruleIds, 0, noRules, rule.ruleId);
+		if(rulePosition < 0){
+			return false;
+		}
+		removedRules[rulePosition >>> 6] |= 1L << rulePosition;
+		return true;
+	}
+
+	// add one vote per covering rule to the votes of its class, returns the no. of covering rules
+	public int vote(Instance instance, double[] votes){
+		return vote(instance, votes, new long[removedRules.length]);
+	}
+
+	// same as vote(Instance, double[]) with failedRules (at least failedRulesLength() long) as working space
+	public int vote(Instance instance, double[] votes, long[] failedRules){
+
+		markFailedRules(instance, failedRules);
+
+		int noCoveringRules = 0;
+		for (int word = 0; word < removedRules.length; word++) {
+
+			long coveringRules = coveringRules(failedRules, word);
+			while(coveringRules != 0){
+				int rulePosition = (word << 6) + Long.numberOfTrailingZeros(coveringRules);
+				votes[ruleClasses[rulePosition]]++;
+				noCoveringRules++;
+				coveringRules &= coveringRules - 1;
+			}
+		}
+		return noCoveringRules;
+	}
+
+	// positions of the rules covering the instance in rules library order, written into
+	// coveredRules (at least numRules() long), returns the no. of covering rules
+	public int coveredRules(Instance instance, long[] failedRules, int[] coveredRules){
+
+		markFailedRules(instance, failedRules);
+
+		int noCoveringRules = 0;
+		for (int word = 0; word < removedRules.length; word++) {
+
+			long coveringRules = coveringRules(failedRules, word);
+			while(coveringRules != 0){
+				coveredRules[noCoveringRules++] = (word << 6) + Long.numberOfTrailingZeros(coveringRules);
+				coveringRules &= coveringRules - 1;
+			}
+		}
+		return noCoveringRules;
+	}
+
+	public Rule rule(int rulePosition){
+		return rules[rulePosition];
+	}
+
+	public int numRules(){
+		return noRules;
+	}
+
+	// no. of longs in a bitset of failed rules
+	public int failedRulesLength(){
+		return removedRules.length;
+	}
+
+	// bit of every removed rule and every rule with a term the instance does not satisfy
+	private void markFailedRules(Instance instance, long[] failedRules){
+
+		System.arraycopy(removedRules, 0, failedRules, 0, removedRules.length);
+
+		for (int i = 0; i < attributeIndices.length; i++) {
+
+			double value = instance.value(attributeIndices[i]);
+			int end = attributeTermStarts[i + 1];
+
+			// a missing value satisfies no term
+			if(Double.isNaN(value)){
+				for (int term = attributeTermStarts[i]; term < end; term++) {
+					failedRules[termRules[term] >>> 6] |= 1L << termRules[term];
+				}
+			}
+			else if(nominalAttributes[i]){
+				for (int term = attributeTermStarts[i]; term < end; term++) {
+					if(value != termLowerBounds[term]){
+						failedRules[termRules[term] >>> 6] |= 1L << termRules[term];
+					}
+				}
+			}
+			else{
+				for (int term = attributeTermStarts[i]; term < end; term++) {
+					if(!(value > termLowerBounds[term] && value <= termUpperBounds[term])){
+						failedRules[termRules[term] >>> 6] |= 1L << termRules[term];
+					}
+				}
+			}
+		}
+	}
+
+	// rules of a word of the bitset which did not fail, without the bits past the last rule
+	private long coveringRules(long[] failedRules, int word){
+
+		long coveringRules = ~failedRules[word];
+		if(word == removedRules.length - 1 && (noRules & 63) != 0){
+			coveringRules &= (1L << noRules) - 1;
+		}
+		return coveringRules;
+	}
+
+	// votes for all instances, row i of votes receives the votes for instance i and
+	// noCoveringRules[i] the no. of rules covering it. Instances are evaluated in blocks:
+	// each attribute column of the block is read once and every term on the attribute
+	// narrows the rows covered by its rule, rows are added to the votes at the end.
+	// Rows of votes are expected to be zero
+	public void vote(Instances instances, double[][] votes, int[] noCoveringRules){
+
+		int noInstances = instances.numInstances();
+		long[] coveredRows = new long[noRules];
+		double[] column = new double[BLOCK_SIZE];
+
+		for (int blockStart = 0; blockStart < noInstances; blockStart += BLOCK_SIZE) {
+
+			int blockSize = Math.min(BLOCK_SIZE, noInstances - blockStart);
+			long allRows = blockSize == BLOCK_SIZE ? -1L : (1L << blockSize) - 1;
+
+			for (int rulePosition = 0; rulePosition < noRules; rulePosition++) {
+				coveredRows[rulePosition] = (removedRules[rulePosition >>> 6] & (1L << rulePosition)) != 0 ? 0L : allRows;
+			}
+
+			for (int i = 0; i < attributeIndices.length; i++) {
+
+				for (int row = 0; row < blockSize; row++) {
+					column[row] = instances.instance(blockStart + row).value(attributeIndices[i]);
+				}
+
+				// missing values fail both comparisons
+				int end = attributeTermStarts[i + 1];
+				for (int term = attributeTermStarts[i]; term < end; term++) {
+
+					if(coveredRows[termRules[term]] == 0L){
+						continue;
+					}
+
+					long passedRows = 0L;
+					if(nominalAttributes[i]){
+						double value = termLowerBounds[term];
+						for (int row = 0; row < blockSize; row++) {
+							if(column[row] == value){
+								passedRows |= 1L << row;
+							}
+						}
+					}else{
+						double lowerBound = termLowerBounds[term];
+						double upperBound = termUpperBounds[term];
+						for (int row = 0; row < blockSize; row++) {
+							if(column[row] > lowerBound && column[row] <= upperBound){
+								passedRows |= 1L << row;
+							}
+						}
+					}
+					coveredRows[termRules[term]] &= passedRows;
+				}
+			}
+
+			for (int rulePosition = 0; rulePosition < noRules; rulePosition++) {
+
+				long rows = coveredRows[rulePosition];
+				while(rows != 0L){
+					int row = blockStart + Long.numberOfTrailingZeros(rows);
+					votes[row][ruleClasses[rulePosition]]++;
+					noCoveringRules[row]++;
+					rows &= rows - 1;
+				}
+			}
+		}
+	}
+
+	private static int words(int noBits){
+		return (noBits + 63) >>> 6;
+	}
+}
@@ -0,0 +1,218 @@
+/*
+ * Copyright (C) 2017 Thien Le, Frederic Stahl - University of Reading, UK
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package moa.classifiers.rules;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import weka.core.Attribute;
+
+// Attribute x value x class counts of nominal attributes over a set of window rows.
+// The table is filled in a single sweep over the rows, after which every candidate
+// nominal rule term can be scored without going back to the instances.
+// Rows of a sparse store are counted from their entries only, the rows of a class without
+// an entry for an attribute are added to value index 0 (the implicit zero) afterwards.
+public class ContingencyTable {
+
+	int numClasses;
+
+	// counts indexed by attribute index, then value index * numClasses + class label,
+	// arrays are allocated on first use and reused by later counts
+	int[][] counts;
+
+	// per attribute and value: no. of rows with that value regardless of class
+	int[][] valueCounts;
+
+	// attributes counted by the last count they were part of
+	boolean[] counted;
+
+	// sparse stores only: no. of entries by attribute index * numClasses + class label
+	int[] entryCounts;
+
+	public ContingencyTable(int numAttributes, int numClassesIn){
+		numClasses = numClassesIn;
+		counts = new int[numAttributes][];
+		valueCounts = new int[numAttributes][];
+		counted = new boolean[numAttributes];
+	}
+
+	// count nominal attribute values of the given rows, attributes in skipAttributes are left out.
+	// Only the entries of the given attributes are touched, so disjoint lists of attributes
+	// can be counted into the same table at the same time. Counts of all rows of the store
+	// are copied from the counts the store keeps up to date instead
+	public void count(WindowStore instancesStore, BitSet rows, List<Attribute> attributes, List<Attribute> skipAttributes){
+
+		boolean allRows = rows.cardinality() == instancesStore.size();
+
+		int noCountedAttributes = 0;
+		int[][] columns = new int[attributes.size()][];
+		int[][] countsOfColumns = new int[attributes.size()][];
+		int[][] valueCountsOfColumns = new int[attributes.size()][];
+
+		// reset counts of the attributes to be counted
+		for (Attribute attribute : attributes) {
+			int index = attribute.index();
+
+			if(!attribute.isNominal() || skipAttributes.contains(attribute)){
+				counted[index] = false;
+				continue;
+			}
+
+			if(counts[index] == null){
+				counts[index] = new int[attribute.numValues() * numClasses];
+				valueCounts[index] = new int[attribute.numValues()];
+			}else{
+				Arrays.fill(counts[index], 0);
+				Arrays.fill(valueCounts[index], 0);
+			}
+			counted[index] = true;
+
+			if(allRows){
+				copyCounts(instancesStore.nominalClassCounts(index), counts[index], valueCounts[index]);
+				if(instancesStore.isSparse()){
+					for (int classLabel = 0; classLabel < numClasses; classLabel++) {
+						addZeros(index, classLabel, instancesStore.zeroCount(index, classLabel));
+					}
+				}
+				continue;
+			}
+
+			columns[noCountedAttributes] = instancesStore.nominalColumn(index);
+			countsOfColumns[noCountedAttributes] = counts[index];
+			valueCountsOfColumns[noCountedAttributes] = valueCounts[index];
+			noCountedAttributes++;
+		}
+
+		if(instancesStore.isSparse()){
+			if(noCountedAttributes > 0){
+				countEntries(instancesStore, rows, attributes);
+			}
+			return;
+		}
+
+		// one sweep over the rows
+		for (int row = rows.nextSetBit(0); row >= 0; row = rows.nextSetBit(row + 1)) {
+
+			int classLabel = instancesStore.classLabel(row);
+
+			for (int i = 0; i < noCountedAttributes; i++) {
+				int value = columns[i][row];
+				if(value == WindowStore.MISSING_NOMINAL_VALUE){
+					continue;
+				}
+				countsOfColumns[i][value * numClasses + classLabel]++;
+				valueCountsOfColumns[i][value]++;
+			}
+		}
+	}
+
+	// one sweep over the entries of the rows within the index range of the attributes,
+	// then the rows of each class without an entry are counted as value index 0
+	private void countEntries(WindowStore instancesStore, BitSet rows, List<Attribute> attributes){
+
+		SparseRows sparseRows = instancesStore.sparseRows();
+		int firstIndex = attributes.get(0).index();
+		int lastIndex = attributes.get(attributes.size() - 1).index();
+
+		synchronized(this){
+			if(entryCounts == null){
+				entryCounts = new int[counts.length * numClasses];
+			}
+		}
+		for (Attribute attribute : attributes) {
+			if(counted[attribute.index()]){
+				Arrays.fill(entryCounts, attribute.index() * numClasses, (attribute.index() + 1) * numClasses, 0);
+			}
+		}
+
+		int[] rowsOfClass = new int[numClasses];
+		for (int row = rows.nextSetBit(0); row >= 0; row = rows.nextSetBit(row + 1)) {
+
+			int classLabel = instancesStore.classLabel(row);
+			rowsOfClass[classLabel]++;
+
+			int end = sparseRows.rowEnd(row);
+			for (int entry = sparseRows.firstEntry(row, firstIndex); entry < end; entry++) {
+				int index = sparseRows.index(entry);
+				if(index > lastIndex){
+					break;
+				}
+				if(!counted[index]){
+					continue;
+				}
+				entryCounts[index * numClasses + classLabel]++;
+
+				double value = sparseRows.value(entry);
+				if(!Double.isNaN(value)){
+					counts[index][(int) value * numClasses + classLabel]++;
+					valueCounts[index][(int) value]++;
+				}
+			}
+		}
+
+		for (Attribute attribute : attributes) {
+			int index = attribute.index();
+			if(counted[index]){
+				for (int classLabel = 0; classLabel < numClasses; classLabel++) {
+					addZeros(index, classLabel, rowsOfClass[classLabel] - entryCounts[index * numClasses + classLabel]);
+				}
+			}
+		}
+	}
+
+	// rows of the class holding value index 0 of a nominal attribute
+	private void addZeros(int attributeIndex, int classLabel, int noZeros){
+		counts[attributeIndex][classLabel] += noZeros;
+		valueCounts[attributeIndex][0] += noZeros;
+	}
+
+	private void copyCounts(int[] storeCounts, int[] attributeCounts, int[] attributeValueCounts){
+
+		System.arraycopy(storeCounts, 0, attributeCounts, 0, storeCounts.length);
+		for (int i = 0; i < storeCounts.length; i++) {
+			attributeValueCounts[i / numClasses] += storeCounts[i];
+		}
+	}
+
+	public boolean isCounted(int attributeIndex){
+		return counted[attributeIndex];
+	}
+
+	// no. of rows with the attribute value
+	public int covered(int attributeIndex, int value){
+		return valueCounts[attributeIndex][value];
+	}
+
+	// no. of rows with the attribute value and the class label
+	public int coveredWithClass(int attributeIndex, int value, int classLabel){
+		return counts[attributeIndex][value * numClasses + classLabel];
+	}
+
+	// conditional probability of the class label given the attribute value, 0 if no row has the value
+	public double probabilityOfClass(int attributeIndex, int value, int classLabel){
+
+		int covered = covered(attributeIndex, value);
+		if(covered == 0){
+			return 0.0d;
+		}
+		return (double) coveredWithClass(attributeIndex, value, classLabel) / (double) covered;
+	}
+
+	public void clear(){
+		Arrays.fill(counted, false);
+	}
+}
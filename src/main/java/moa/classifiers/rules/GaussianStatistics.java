@@ -0,0 +1,161 @@
+/*
+ * Copyright (C) 2017 Thien Le, Frederic Stahl - University of Reading, UK
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package moa.classifiers.rules;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+// Running mean and variance of numeric attributes for each class label, kept in
+// primitive arrays indexed by attribute index * numClasses + class label.
+// Values are added and removed one at a time (Welford), statistics of two sets can be merged
+// and older statistics can be faded, so nothing has to be rescanned at induction time.
+public class GaussianStatistics implements Serializable {
+
+	int numAttributes;
+	int numClasses;
+
+	// sum of weights, mean and sum of squared differences from the mean
+	double[] weights;
+	double[] means;
+	double[] squaredDifferences;
+
+	public GaussianStatistics(int numAttributesIn, int numClassesIn){
+		numAttributes = numAttributesIn;
+		numClasses = numClassesIn;
+
+		weights = new double[numAttributes * numClasses];
+		means = new double[numAttributes * numClasses];
+		squaredDifferences = new double[numAttributes * numClasses];
+	}
+
+	// add an observed value of a numeric attribute for a class label, missing values are ignored
+	public void add(int attributeIndex, int classLabel, double value){
+
+		if(Double.isNaN(value)){
+			return;
+		}
+
+		int i = attributeIndex * numClasses + classLabel;
+
+		weights[i] += 1.0d;
+		double delta = value - means[i];
+		means[i] += delta / weights[i];
+		squaredDifferences[i] += delta * (value - means[i]);
+	}
+
+	// take back a value added earlier, missing values are ignored
+	public void remove(int attributeIndex, int classLabel, double value){
+
+		if(Double.isNaN(value)){
+			return;
+		}
+
+		int i = attributeIndex * numClasses + classLabel;
+
+		if(weights[i] <= 1.0d){
+			weights[i] = 0.0d;
+			means[i] = 0.0d;
+			squaredDifferences[i] = 0.0d;
+			return;
+		}
+
+		double meanWithoutValue = (means[i] * weights[i] - value) / (weights[i] - 1.0d);
+		squaredDifferences[i] = Math.max(squaredDifferences[i] - (value - meanWithoutValue) * (value - means[i]), 0.0d);
+		means[i] = meanWithoutValue;
+		weights[i] -= 1.0d;
+	}
+
+	// add a number of zero values at once, for the implicit zeros of sparse instances
+	public void addZeros(int attributeIndex, int classLabel, double noZeros){
+
+		if(noZeros <= 0.0d){
+			return;
+		}
+
+		int i = attributeIndex * numClasses + classLabel;
+		double mergedWeight = weights[i] + noZeros;
+		squaredDifferences[i] += means[i] * means[i] * weights[i] * noZeros / mergedWeight;
+		means[i] -= means[i] * noZeros / mergedWeight;
+		weights[i] = mergedWeight;
+	}
+
+	// combine with statistics of another set of instances
+	public void merge(GaussianStatistics other){
+
+		for (int i = 0; i < weights.length; i++) {
+
+			if(other.weights[i] == 0.0d){
+				continue;
+			}
+			if(weights[i] == 0.0d){
+				weights[i] = other.weights[i];
+				means[i] = other.means[i];
+				squaredDifferences[i] = other.squaredDifferences[i];
+				continue;
+			}
+
+			double mergedWeight = weights[i] + other.weights[i];
+			double delta = other.means[i] - means[i];
+
+			squaredDifferences[i] += other.squaredDifferences[i] + delta * delta * weights[i] * other.weights[i] / mergedWeight;
+			means[i] += delta * other.weights[i] / mergedWeight;
+			weights[i] = mergedWeight;
+		}
+	}
+
+	// scale down the weight of everything seen so far, 0 forgets it, 1 keeps it
+	public void fade(double fadingFactor){
+
+		for (int i = 0; i < weights.length; i++) {
+			weights[i] *= fadingFactor;
+			squaredDifferences[i] *= fadingFactor;
+		}
+	}
+
+	public void clear(){
+		Arrays.fill(weights, 0.0d);
+		Arrays.fill(means, 0.0d);
+		Arrays.fill(squaredDifferences, 0.0d);
+	}
+
+	public GaussianStatistics copy(){
+
+		GaussianStatistics copy = new GaussianStatistics(numAttributes, numClasses);
+		System.arraycopy(weights, 0, copy.weights, 0, weights.length);
+		System.arraycopy(means, 0, copy.means, 0, means.length);
+		System.arraycopy(squaredDifferences, 0, copy.squaredDifferences, 0, squaredDifferences.length);
+		return copy;
+	}
+
+	public double weight(int attributeIndex, int classLabel){
+		return weights[attributeIndex * numClasses + classLabel];
+	}
+
+	public double mean(int attributeIndex, int classLabel){
+		return means[attributeIndex * numClasses + classLabel];
+	}
+
+	// sample standard deviation, 0 if there are less than two values
+	public double standardDeviation(int attributeIndex, int classLabel){
+
+		int i = attributeIndex * numClasses + classLabel;
+		if(weights[i] <= 1.0d){
+			return 0.0d;
+		}
+		return Math.sqrt(squaredDifferences[i] / (weights[i] - 1.0d));
+	}
+}
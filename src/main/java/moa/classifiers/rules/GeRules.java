@@ -16,29 +16,42 @@
  */
 package moa.classifiers.rules;
 
+import java.io.File;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collections;
+import java.util.Deque;
 import java.util.HashMap;
-import java.util.LinkedHashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
+import java.util.Random;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
 import org.apache.commons.math3.distribution.NormalDistribution;
-import org.apache.commons.math3.stat.descriptive.SummaryStatistics;
 import weka.core.Attribute;
 import weka.core.Instance;
-import weka.core.InstanceComparator;
 import weka.core.Instances;
 import weka.core.Utils;
-import weka.core.converters.ConverterUtils.DataSource;
 import moa.classifiers.AbstractClassifier;
 import moa.core.DoubleVector;
 import moa.core.Measurement;
+import moa.options.FlagOption;
 import moa.options.FloatOption;
 import moa.options.IntOption;
+import moa.options.MultiChoiceOption;
 import moa.streams.generators.RandomTreeGenerator;
 
 public class GeRules extends AbstractClassifier {
@@ -50,6 +63,20 @@ public class GeRules extends AbstractClassifier {
 			"The number of instances in each window", 
 		500, 0, Integer.MAX_VALUE);
 	
+	// option to slide the window by a number of instances instead of starting a new one
+	public IntOption slideStepOption = new IntOption(
+			"slideStep", 
+			'w', 
+			"Learn rules every this many instances added to a window which keeps the latest slidingWindowsSize instances, 0 learns from consecutive windows which do not overlap. Sliding windows also merge redundant rules", 
+		0, 0, Integer.MAX_VALUE);
+	
+	// option for the size of the buffer of unlearnt instances
+	public IntOption maxUnlearntPerClassOption = new IntOption(
+			"maxUnlearntPerClass", 
+			'l', 
+			"Maximum number of instances of each class kept from windows no rules were learnt from, a random sample is kept beyond this", 
+		500, 1, Integer.MAX_VALUE);
+	
 	// option for minmum of tries before a rule is considered to be removed
 	public IntOption MinRuleTriesOption = new IntOption(
 			"minRuleTries", 
@@ -60,6 +87,137 @@ public class GeRules extends AbstractClassifier {
 	// threshold for the rule to be removed
 	public FloatOption ruleValidationThresholdOption = new FloatOption("ruleValidationThreshold", 't', "If the accuracy of rule drops below this threshold then the rule will be removed", 0.8d);
 	
+	// option for keeping Gaussian statistics of numeric attributes across windows
+	public FloatOption gaussianFadingFactorOption = new FloatOption(
+			"gaussianFadingFactor", 
+			'g', 
+			"Weight kept from the Gaussian statistics of earlier windows at each induction, 0 uses the statistics of the current window only", 
+			0.0d, 0.0d, 1.0d);
+	
+	// option to induce the rules of different class labels at the same time
+	public FlagOption parallelClassInductionOption = new FlagOption(
+			"parallelClassInduction", 
+			'p', 
+			"Induce rules for different class labels in parallel on a fork/join pool");
+	
+	// option for number of threads inducing rules in parallel
+	public IntOption inductionParallelismOption = new IntOption(
+			"inductionParallelism", 
+			'j', 
+			"Number of threads for parallel induction, 0 uses the common fork/join pool", 
+		0, 0, Integer.MAX_VALUE);
+	
+	// option to score the candidate attributes of a rule term at the same time
+	public FlagOption parallelAttributeScoringOption = new FlagOption(
+			"parallelAttributeScoring", 
+			'q', 
+			"Score candidate attributes of each rule refinement step in parallel chunks");
+	
+	// option for number of attributes scored by one parallel task
+	public IntOption attributeChunkSizeOption = new IntOption(
+			"attributeChunkSize", 
+			'k', 
+			"Number of attributes scored by one task when attributes are scored in parallel", 
+		64, 1, Integer.MAX_VALUE);
+	
+	// option to choose rule terms on samples of the dataset bounded by the Hoeffding bound
+	public FlagOption sampledTermSelectionOption = new FlagOption(
+			"sampledTermSelection", 
+			'h', 
+			"Score candidate rule terms on growing random samples of the dataset and stop once the Hoeffding bound separates the best term from the runner-up");
+	
+	// option for the confidence of sampled rule term selection
+	public FloatOption termSelectionConfidenceOption = new FloatOption(
+			"termSelectionConfidence", 
+			'i', 
+			"Allowed probability of choosing another rule term on a sample than on the whole dataset", 
+			1.0e-7d, 0.0d, 1.0d);
+	
+	// option for when two rule terms are taken as equally good
+	public FloatOption termSelectionTieThresholdOption = new FloatOption(
+			"termSelectionTieThreshold", 
+			'u', 
+			"Hoeffding bound below which the best rule term on a sample is taken even if the runner-up is as good", 
+			0.1d, 0.0d, 1.0d);
+	
+	// option for the size of the first sample
+	public IntOption termSelectionSampleSizeOption = new IntOption(
+			"termSelectionSampleSize", 
+			'y', 
+			"Number of instances of the first sample, each further sample is twice as large. Datasets are scored as a whole once a sample would be more than half of them", 
+		200, 1, Integer.MAX_VALUE);
+	
+	// option to induce rules in the background instead of stalling the stream
+	public FlagOption asyncInductionOption = new FlagOption(
+			"asyncInduction", 
+			'a', 
+			"Induce rules from a full window on a background thread while the stream keeps filling a new window");
+	
+	// option for maximum number of windows being induced in the background
+	public IntOption maxInflightInductionsOption = new IntOption(
+			"maxInflightInductions", 
+			'f', 
+			"Maximum number of windows induced in the background at once, the stream waits for the oldest one beyond this", 
+		1, 1, Integer.MAX_VALUE);
+	
+	// option to predict from a flat compiled form of the rules library
+	public FlagOption compiledPredictionOption = new FlagOption(
+			"compiledPrediction", 
+			'c', 
+			"Predict with the rules library compiled into flat arrays, each attribute is read once per instance");
+	
+	// option for maximum number of rules in the rules library
+	public IntOption maxRulesOption = new IntOption(
+			"maxRules", 
+			'x', 
+			"Maximum number of rules in the rules library, rules beyond this are evicted, 0 for no limit", 
+		0, 0, Integer.MAX_VALUE);
+	
+	// option for memory budget of the rules library
+	public IntOption maxRulesLibraryKBOption = new IntOption(
+			"maxRulesLibraryKB", 
+			'b', 
+			"Estimated memory in kilobytes the rules library may use, rules beyond this are evicted, 0 for no limit", 
+		0, 0, Integer.MAX_VALUE);
+	
+	// option for which rules are evicted first when the rules library is over its limits
+	public MultiChoiceOption evictionPolicyOption = new MultiChoiceOption(
+			"evictionPolicy", 
+			'e', 
+			"Rules evicted first when the rules library is over its limits", 
+			RuleEvictionPolicy.POLICY_LABELS, 
+			RuleEvictionPolicy.POLICY_DESCRIPTIONS, 
+		0);
+	
+	// option to serve predictions from other threads while one thread trains
+	public FlagOption concurrentPredictionOption = new FlagOption(
+			"concurrentPrediction", 
+			'o', 
+			"Allow getVotesForInstance from several threads while one thread trains, predictions read immutable snapshots of the rules library");
+	
+	// option to merge identical and subsumed rules into the rules library instead of adding them
+	public FlagOption mergeRedundantRulesOption = new FlagOption(
+			"mergeRedundantRules", 
+			'd', 
+			"Fold learnt rules identical to or more specific than a rule of the same class in the rules library into that rule, and library rules more specific than a learnt rule into the learnt rule");
+	
+	// option to train and predict without allocating objects per instance
+	public FlagOption allocationFreeOption = new FlagOption(
+			"allocationFree", 
+			'z', 
+			"Look up rules covering an instance in the compiled rules library using per thread working arrays, so training and prediction do not allocate per instance");
+	
+	// option to hand out the same votes array again instead of a new one per prediction
+	public FlagOption reuseVotesOption = new FlagOption(
+			"reuseVotes", 
+			'v', 
+			"getVotesForInstance returns an array of the calling thread which is overwritten by its next call, copy the votes to keep them");
+	
+	// option to switch on timers, histograms and JFR events
+	public FlagOption instrumentationOption = new FlagOption(
+			"instrumentation", 
+			'n', 
+			"Time coverage lookups, rule updates and inductions and report rules library statistics, with JFR events where the JRE has Flight Recorder");
 	
 	@Override
 	public String getPurposeString() {
@@ -70,17 +228,75 @@ public class GeRules extends AbstractClassifier {
 	// store classification distribution throughout the stream
 	DoubleVector observedClassDistribution;
 	
-	// sliding windows buffer for instances
-	ArrayList<Instance> slidingWindowsBuffer;
+	// the same distribution in striped sums for concurrent predictions, which must not read
+	// the DoubleVector while the training thread grows it, null until the first instance
+	volatile DoubleAdder[] concurrentClassDistribution;
+	
+	// sliding windows buffer for instances, held column by column
+	WindowStore slidingWindowsBuffer;
+	
+	// instances added to the window since rules were last learnt from it
+	int windowAdditions;
+	
+	// instances of a sliding window added since the faded Gaussian statistics took
+	// instances in (at most the window), only kept with a fading factor
+	WindowStore fadingWindowAdditions;
 	
-	// this buffer store unlearnt instances (if a batch contains instances from a class only then PRISM won't induce any rules)
-	ArrayList<Instance> unlearntInstancesList;
+	// this buffer store unlearnt instances (if a batch contains instances from a class only then PRISM won't induce any rules),
+	// bounded per class
+	UnlearntReservoir unlearntInstancesList;
 	
 	// main classifier based on Prism to induce Rules as in the paper
 	PrismClassifier prismClassifier;
 	
+	// Gaussian statistics carried across windows when a fading factor is set
+	GaussianStatistics fadedGaussianStatistics;
+	
+	// seed of the sampling of unlearnt instances, fixed so that runs can be repeated
+	static final long UNLEARNT_RESERVOIR_SEED = 1L;
+	
 	// rules library induced by the classifer throughout the stream
-	List<Rule> rulesList;
+	volatile List<Rule> rulesList;
+	
+	// index over the rules library for coverage lookups, kept in step with rulesList
+	RuleIndex ruleIndex;
+	
+	// rules of the library by canonical form, only kept when redundant rules are merged
+	Map<RuleKey, Rule> rulesByKey;
+	
+	// sequence number given to the next rule added to the rules library
+	long nextRuleId;
+	
+	// estimated memory used by the rules in the rules library
+	long rulesLibraryBytes;
+	
+	// order in which rules are evicted when the rules library is over its limits
+	RuleEvictionPolicy evictionPolicy;
+	
+	// rules library compiled for prediction, null until compiled and after rules were added.
+	// With concurrent prediction this is a snapshot replaced (never changed) on every
+	// change of the rules library, so it is always set
+	volatile CompiledRuleSet compiledRuleSet;
+	
+	// version of the rules library, counts additions and removals of rules; volatile since
+	// it is read by predicting threads
+	volatile long rulesLibraryVersion;
+	
+	// background inductions in submission order, rules are published in this order too
+	transient Deque<Future<ArrayList<Rule>>> pendingInductions;
+	
+	// executor running background inductions, created on first use
+	transient ExecutorService inductionExecutor;
+	
+	// fork/join pool for parallel induction, created on first use by the stream thread or
+	// by a background induction, whichever comes first
+	transient volatile ForkJoinPool inductionPool;
+	
+	// working arrays of each thread for allocation-free training and prediction
+	transient ThreadLocal<ScratchBuffers> scratchBuffers;
+	
+	// timings and rules library counters, null unless instrumentation is switched on
+	Instrumentation instrumentation;
 	
 	// total seen instance
 	int totalSeenInstances;
@@ -88,6 +304,11 @@ public class GeRules extends AbstractClassifier {
 	int actualAttempts;
 	int actualAttemptsCorrectlyClassified;
 	
+	// counters of concurrent predictions, added to the counters above when read
+	LongAdder concurrentSeenInstances;
+	LongAdder concurrentAttempts;
+	LongAdder concurrentAttemptsCorrectlyClassified;
+	
 	@Override
 	public boolean isRandomizable() {
 		// TODO Auto-generated method stub
@@ -96,13 +317,48 @@ public class GeRules extends AbstractClassifier {
 
 	@Override
 	public double[] getVotesForInstance(Instance inst) {
-		// TODO Auto-generated method stub
 		
-		// increase no. of seen intances
-		totalSeenInstances++;
+		double[] classPrediction = votesArray(inst.numClasses());
+		predict(inst, classPrediction);
+		return classPrediction;
+	}
+	
+	// votes for the instance written into classPrediction (zero and numClasses long): one vote
+	// per covering rule for its class, or the observed class distribution if no rule covers
+	// the instance. Returns the no. of rules covering the instance, 0 if the learner abstained
+	public int predict(Instance inst, double[] classPrediction){
+		
+		int noCoveringRules;
+		if(concurrentPredictionOption.isSet()){
+			noCoveringRules = voteFromRulesSnapshot(inst, classPrediction);
+		}else{
+			
+			// increase no. of seen intances
+			totalSeenInstances++;
+			
+			if(compiledPredictionOption.isSet() || allocationFreeOption.isSet()){
+				noCoveringRules = voteFromCompiledRules(inst, classPrediction);
+			}else{
+				noCoveringRules = voteFromCoveredRules(inst, classPrediction);
+			}
+		}
+		
+		// otherwise, return the majority class
+		if(noCoveringRules == 0){
+			majorityClassVotes(classPrediction);
+		}
+		return noCoveringRules;
+	}
+	
+	// votes of the rules covering the instance found through the rule index
+	private int voteFromCoveredRules(Instance inst, double[] classPrediction){
 		
 		// check if there is any rules that cover the instance
+		long lookupStart = startTimer();
 		ArrayList<Rule> coveredRules = RulesCoveredInstance(inst);
+		if(instrumentation != null){
+			instrumentation.recordCoverageLookup(lookupStart);
+		}
 //		logger.debug("No. Rules cover instance: " + coveredRules.size());
 		
 //		logger.debug(inst);
@@ -111,39 +367,237 @@ public class GeRules extends AbstractClassifier {
 			
 			actualAttempts++;
 			
-			double[] classPrediction = new double[inst.numClasses()];
 			// vote class labels from all available rules
-			
 			for (Rule rule : coveredRules) {
 				classPrediction[(int)rule.classification]++;
 //				logger.debug(rule.printRule());
-                        }
-                        
+			}
+			
 			// actual attempt
 			if(Utils.maxIndex(classPrediction) == (int) inst.classValue()){
 				actualAttemptsCorrectlyClassified++;
 			}
-			return classPrediction ;
 		}
+		return coveredRules.size();
+	}
+	
+	// same votes as from the covered rules, evaluated on the compiled rules library
+	private int voteFromCompiledRules(Instance inst, double[] classPrediction){
 		
-		// otherwise, return the majority class
-		return observedClassDistribution.getArrayCopy();
+		CompiledRuleSet ruleSet = compiledRules();
+		
+		long lookupStart = startTimer();
+		int noCoveringRules = vote(ruleSet, inst, classPrediction);
+		if(instrumentation != null){
+			instrumentation.recordCoverageLookup(lookupStart);
+		}
+		
+		if(noCoveringRules > 0){
+			
+			actualAttempts++;
+			
+			// actual attempt
+			if(Utils.maxIndex(classPrediction) == (int) inst.classValue()){
+				actualAttemptsCorrectlyClassified++;
+			}
+		}
+		return noCoveringRules;
+	}
+	
+	// votes from the current snapshot of the rules library, safe to call from several
+	// threads while one thread trains. Only lock-free counters are updated, coverage
+	// lookups are not timed since the histograms belong to the training thread
+	private int voteFromRulesSnapshot(Instance inst, double[] classPrediction){
+		
+		concurrentSeenInstances.increment();
+		
+		int noCoveringRules = vote(compiledRuleSet, inst, classPrediction);
+		if(noCoveringRules > 0){
+			
+			concurrentAttempts.increment();
+			
+			if(Utils.maxIndex(classPrediction) == (int) inst.classValue()){
+				concurrentAttemptsCorrectlyClassified.increment();
+			}
+		}
+		return noCoveringRules;
+	}
+	
+	// compiled rules library, compiled again if rules were added since it was last used
+	CompiledRuleSet compiledRules(){
+		
+		CompiledRuleSet ruleSet = compiledRuleSet;
+		if(ruleSet == null){
+			ruleSet = new CompiledRuleSet(rulesList, rulesLibraryVersion);
+			compiledRuleSet = ruleSet;
+		}
+		return ruleSet;
+	}
+	
+	// votes of the rules covering the instance, with the working arrays of the thread if allocation-free
+	private int vote(CompiledRuleSet ruleSet, Instance inst, double[] classPrediction){
+		
+		if(allocationFreeOption.isSet()){
+			return ruleSet.vote(inst, classPrediction, scratchBuffers().failedRules(ruleSet));
+		}
+		return ruleSet.vote(inst, classPrediction);
+	}
+	
+	// zeroed array for the votes of a prediction, the array of the thread if votes are reused
+	private double[] votesArray(int numClasses){
+		
+		if(reuseVotesOption.isSet()){
+			return scratchBuffers().votes(numClasses);
+		}
+		return new double[numClasses];
+	}
+	
+	// votes for the majority class when no rule covers an instance
+	private void majorityClassVotes(double[] classPrediction){
+		
+		if(concurrentPredictionOption.isSet()){
+			DoubleAdder[] classDistribution = concurrentClassDistribution;
+			for (int classLabel = 0; classDistribution != null && classLabel < classPrediction.length; classLabel++) {
+				classPrediction[classLabel] = classDistribution[classLabel].sum();
+			}
+			return;
+		}
+		
+		for (int classLabel = 0; classLabel < classPrediction.length; classLabel++) {
+			classPrediction[classLabel] = observedClassDistribution.getValue(classLabel);
+		}
+	}
+	
+	// add the weight of the instance to the class distribution read by concurrent predictions
+	private void observeClassConcurrently(Instance inst){
+		
+		DoubleAdder[] classDistribution = concurrentClassDistribution;
+		if(classDistribution == null){
+			classDistribution = new DoubleAdder[inst.numClasses()];
+			for (int classLabel = 0; classLabel < classDistribution.length; classLabel++) {
+				classDistribution[classLabel] = new DoubleAdder();
+			}
+			concurrentClassDistribution = classDistribution;
+		}
+		classDistribution[(int) inst.classValue()].add(inst.weight());
+	}
+	
+	ScratchBuffers scratchBuffers(){
+		
+		// thread locals are not serialized, so a deserialized model sets them up again
+		if(scratchBuffers == null){
+			scratchBuffers = newScratchBuffers();
+		}
+		return scratchBuffers.get();
+	}
+	
+	private static ThreadLocal<ScratchBuffers> newScratchBuffers(){
+		
+		return new ThreadLocal<ScratchBuffers>() {
+			@Override
+			protected ScratchBuffers initialValue() {
+				return new ScratchBuffers();
+			}
+		};
+	}
+	
+	// no. of seen instances including those of concurrent predictions
+	int seenInstances(){
+		
+		if(concurrentSeenInstances == null){
+			return totalSeenInstances;
+		}
+		return totalSeenInstances + concurrentSeenInstances.intValue();
+	}
+	
+	// version of the rules library, changes whenever rules are added or removed
+	public long rulesLibraryVersion(){
+		return rulesLibraryVersion;
+	}
+	
+	// votes for a block of instances, written into the rows of votes (a row is allocated
+	// if it is missing or has the wrong length). The rules library is evaluated on the
+	// whole block at once and the counters are updated once for the block
+	public void getVotesForInstances(Instances instances, double[][] votes){
+		
+		int noInstances = instances.numInstances();
+		int numClasses = instances.numClasses();
+		
+		if(votes.length < noInstances){
+			throw new IllegalArgumentException("Votes have " + votes.length + " rows for " + noInstances + " instances");
+		}
+		for (int i = 0; i < noInstances; i++) {
+			if(votes[i] == null || votes[i].length != numClasses){
+				votes[i] = new double[numClasses];
+			}else{
+				Arrays.fill(votes[i], 0.0d);
+			}
+		}
+		
+		CompiledRuleSet ruleSet = compiledRules();
+		
+		int[] noCoveringRules = new int[noInstances];
+		ruleSet.vote(instances, votes, noCoveringRules);
+		
+		int attempts = 0;
+		int attemptsCorrectlyClassified = 0;
+		for (int i = 0; i < noInstances; i++) {
+			
+			if(noCoveringRules[i] > 0){
+				
+				attempts++;
+				if(Utils.maxIndex(votes[i]) == (int) instances.instance(i).classValue()){
+					attemptsCorrectlyClassified++;
+				}
+			}
+			// otherwise, the majority class
+			else{
+				majorityClassVotes(votes[i]);
+			}
+		}
+		
+		if(concurrentPredictionOption.isSet()){
+			concurrentSeenInstances.add(noInstances);
+			concurrentAttempts.add(attempts);
+			concurrentAttemptsCorrectlyClassified.add(attemptsCorrectlyClassified);
+			return;
+		}
+		
+		totalSeenInstances += noInstances;
+		actualAttempts += attempts;
+		actualAttemptsCorrectlyClassified += attemptsCorrectlyClassified;
 	}
 	
 	// abstaining rate
 	public double abstainingRate(){
 		
-		double abstainingRate = (double) actualAttempts / (double) totalSeenInstances;
+		double abstainingRate = (double) attempts() / (double) seenInstances();
 		return abstainingRate;
 	}
 	
 	// tentative accuracy
 	public double tentativeAccuracy(){
 		
-		double tentativeAccuracy = (double) actualAttemptsCorrectlyClassified / (double) actualAttempts;
+		double tentativeAccuracy = (double) attemptsCorrectlyClassified() / (double) attempts();
 		return tentativeAccuracy;
 	}
 	
+	private int attempts(){
+		
+		if(concurrentAttempts == null){
+			return actualAttempts;
+		}
+		return actualAttempts + concurrentAttempts.intValue();
+	}
+	
+	private int attemptsCorrectlyClassified(){
+		
+		if(concurrentAttemptsCorrectlyClassified == null){
+			return actualAttemptsCorrectlyClassified;
+		}
+		return actualAttemptsCorrectlyClassified + concurrentAttemptsCorrectlyClassified.intValue();
+	}
+	
 	@Override
 	public void resetLearningImpl() {
 		// TODO Auto-generated method stub
@@ -151,13 +605,45 @@ public class GeRules extends AbstractClassifier {
 		// initialise varibles
 		prismClassifier = new PrismClassifier();
 		rulesList = new ArrayList<>();
+		ruleIndex = new RuleIndex(mergesRedundantRules());
+		rulesByKey = new HashMap<>();
+		nextRuleId = 0;
+		rulesLibraryVersion = 0;
+		compiledRuleSet = concurrentPredictionOption.isSet() ? new CompiledRuleSet(rulesList, rulesLibraryVersion) : null;
+		rulesLibraryBytes = 0;
+		evictionPolicy = RuleEvictionPolicy.forIndex(evictionPolicyOption.getChosenIndex());
 		observedClassDistribution = new DoubleVector();
+		concurrentClassDistribution = null;
 		totalSeenInstances = 0;
-		slidingWindowsBuffer = new ArrayList<>(); // not to initialise proper instances without header instance from the data stream
-		unlearntInstancesList = new ArrayList<>();
+		slidingWindowsBuffer = new WindowStore(slidingWindowsSizeOption.getValue(), slidingWindow()); // columns are set up from the header of the first instance
+		windowAdditions = 0;
+		unlearntInstancesList = new UnlearntReservoir(maxUnlearntPerClassOption.getValue(), UNLEARNT_RESERVOIR_SEED);
+		fadedGaussianStatistics = null;
+		fadingWindowAdditions = slidingWindow() && gaussianFadingFactorOption.getValue() > 0.0d 
+				? new WindowStore(slidingWindowsSizeOption.getValue(), true) : null;
+		instrumentation = instrumentationOption.isSet() ? new Instrumentation() : null;
+		scratchBuffers = newScratchBuffers();
+		
+		// drop inductions of the previous model
+		if(pendingInductions != null){
+			for (Future<ArrayList<Rule>> pendingInduction : pendingInductions) {
+				pendingInduction.cancel(true);
+			}
+		}
+		pendingInductions = new ArrayDeque<>();
 	
 		actualAttempts = 0;
 		actualAttemptsCorrectlyClassified = 0;
+		
+		if(concurrentPredictionOption.isSet()){
+			concurrentSeenInstances = new LongAdder();
+			concurrentAttempts = new LongAdder();
+			concurrentAttemptsCorrectlyClassified = new LongAdder();
+		}else{
+			concurrentSeenInstances = null;
+			concurrentAttempts = null;
+			concurrentAttemptsCorrectlyClassified = null;
+		}
 	}
 
 	@Override
@@ -166,55 +652,248 @@ public class GeRules extends AbstractClassifier {
 		
 		// add weight of respective class to classification distribution
 		observedClassDistribution.addToValue((int) inst.classValue(), inst.weight());
+		if(concurrentPredictionOption.isSet()){
+			observeClassConcurrently(inst);
+		}
+		
+		// publish rules from background inductions which have completed meanwhile
+		publishCompletedInductions(false);
+		
+		// rules covering the instance, looked up once through the rule index, or
+		// without allocating as positions of rules in the compiled rules library
+		long lookupStart = startTimer();
+		ArrayList<Rule> coveredRules = null;
+		CompiledRuleSet ruleSet = null;
+		int[] coveredRulePositions = null;
+		int noCoveredRules;
+		if(allocationFreeOption.isSet()){
+			ScratchBuffers scratch = scratchBuffers();
+			ruleSet = compiledRules();
+			coveredRulePositions = scratch.coveredRules(ruleSet);
+			noCoveredRules = ruleSet.coveredRules(inst, scratch.failedRules(ruleSet), coveredRulePositions);
+		}else{
+			coveredRules = RulesCoveredInstance(inst);
+			noCoveredRules = coveredRules.size();
+		}
+		if(instrumentation != null){
+			instrumentation.recordCoverageLookup(lookupStart);
+		}
 		
 		// only add instances to be learnt if there are no rule coverd the instance
-		if(RulesCoveredInstance(inst).isEmpty()){
+		if(noCoveredRules == 0){
 			slidingWindowsBuffer.add(inst);
+			windowAdditions++;
+			if(fadingWindowAdditions != null){
+				fadingWindowAdditions.add(inst);
+			}
 		}
 		// if there are rule(s) cover the instance, then update stattic in the rule
 		else{
 			
+			long updateStart = startTimer();
+			
 			// for each rule matched the instance,
 			// update class distribution statistic
-			for (Rule rule : RulesCoveredInstance(inst)) {
+			for (int i = 0; i < noCoveredRules; i++) {
+				Rule rule = coveredRules != null ? coveredRules.get(i) : ruleSet.rule(coveredRulePositions[i]);
 				rule.updateClassDistribution(inst);
 				
-				rule.noOfCovered++;
+				rule.noOfCovered.increment();
+				rule.lastCoveredAt = seenInstances();
 				
 				// also update if the rule correctly cover an instance with it class
 				if(inst.classValue() == rule.classification){
-					rule.noOfCorrectlyCovered++;
+					rule.noOfCorrectlyCovered.increment();
 				}else{					// validate the current rule
 					if(rule.ruleShouldBeRemoved()){
-						rulesList.remove(rule);
+						removeRuleFromLibrary(rule);
 					}	
 				}	
 			}
 			
+			if(instrumentation != null){
+				instrumentation.recordRuleUpdate(updateStart);
+			}
 		}
 		
 		// check if the sliding windows buffer is filled to the criteria
-		if(slidingWindowsBuffer.size() == slidingWindowsSizeOption.getValue()){
+		if(windowReadyForInduction()
+				&& asyncInductionOption.isSet()){
+			
+			submitInduction();
+			windowCompleted();
+		}
+		else if(windowReadyForInduction()){
 						
                     // learn rules with the classifier
-                    ArrayList<Rule> learntRules = prismClassifier.learnRules(slidingWindowsBuffer);
+                    long inductionStart = startTimer();
+                    ArrayList<Rule> learntRules = slidingWindow() 
+                            ? prismClassifier.learnRulesFromSlidingWindow(slidingWindowsBuffer) 
+                            : prismClassifier.learnRules(slidingWindowsBuffer);
+                    if(instrumentation != null){
+                            instrumentation.recordInduction(inductionStart, slidingWindowsBuffer.size(), learntRules == null ? 0 : learntRules.size());
+                    }
 
                     if(learntRules != null){
-                            rulesList.addAll(learntRules);
+                            addRulesToLibrary(learntRules);
                     }
 
-                    // clear sliding window buffer to take more instances
-                    slidingWindowsBuffer.clear();
+                    // clear sliding window buffer to take more instances, a sliding window keeps them
+                    if(!slidingWindow()){
+                            slidingWindowsBuffer.clear();
+                    }
+                    windowCompleted();
+		}
+	}
+	
+	// whether the window slides over the stream instead of being emptied after each induction
+	boolean slidingWindow(){
+		return slideStepOption.getValue() > 0 && slideStepOption.getValue() < slidingWindowsSizeOption.getValue();
+	}
+	
+	// a window is learnt from when it is full, a sliding window then again after every slide step
+	boolean windowReadyForInduction(){
+		
+		if(slidingWindowsBuffer.size() < slidingWindowsSizeOption.getValue()){
+			return false;
+		}
+		return !slidingWindow() || windowAdditions >= slideStepOption.getValue();
+	}
+	
+	// rules learnt from overlapping windows are mostly the same, so they are always merged
+	boolean mergesRedundantRules(){
+		return mergeRedundantRulesOption.isSet() || slidingWindow();
+	}
+	
+	// start time of an instrumented section, 0 if instrumentation is switched off
+	long startTimer(){
+		return instrumentation == null ? 0L : System.nanoTime();
+	}
+	
+	void windowCompleted(){
+		
+		windowAdditions = 0;
+		
+		if(instrumentation != null){
+			instrumentation.windowCompleted(rulesList.size(), unlearntInstancesList.size());
 		}
 	}
 
+	// hand the full window over to the background executor and start a fresh one
+	void submitInduction(){
+		
+		// wait for the oldest induction if too many windows are in flight
+		while(pendingInductions.size() >= maxInflightInductionsOption.getValue()){
+			publishCompletedInductions(true);
+		}
+		
+		// unlearnt instances are merged here on the stream thread, so the
+		// background task only works on its own copy of the window
+		final WindowStore inputInstances;
+		if(slidingWindow()){
+			inputInstances = prismClassifier.prepareSlidingWindow(slidingWindowsBuffer);
+		}else{
+			inputInstances = prismClassifier.prepareInstances(slidingWindowsBuffer);
+			slidingWindowsBuffer.clear();
+		}
+		
+		if(inputInstances == null){
+			return;
+		}
+		
+		final GaussianStatistics gaussianStatistics = prismClassifier.gaussianStatisticsForInduction(inputInstances);
+		final int ruleAge = seenInstances();
+		final Instrumentation inductionInstrumentation = instrumentation;
+		pendingInductions.add(inductionExecutor().submit(new Callable<ArrayList<Rule>>() {
+			@Override
+			public ArrayList<Rule> call() {
+				
+				long inductionStart = inductionInstrumentation == null ? 0L : System.nanoTime();
+				ArrayList<Rule> learntRules = new PrismClassifier().induceRules(inputInstances, gaussianStatistics, ruleAge);
+				if(inductionInstrumentation != null){
+					inductionInstrumentation.recordInduction(inductionStart, inputInstances.size(), learntRules.size());
+				}
+				return learntRules;
+			}
+		}));
+	}
+	
+	// publish rules of finished inductions in submission order, if waitForOldest
+	// is set then block until at least the oldest induction has been published
+	void publishCompletedInductions(boolean waitForOldest){
+		
+		while(!pendingInductions.isEmpty()
+				&& (waitForOldest || pendingInductions.peek().isDone())){
+			
+			ArrayList<Rule> learntRules;
+			try {
+				learntRules = pendingInductions.poll().get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new RuntimeException("Interrupted while waiting for rule induction", e);
+			} catch (ExecutionException e) {
+				throw new RuntimeException("Background rule induction failed", e.getCause());
+			}
+			
+			if(learntRules != null){
+				addRulesToLibrary(learntRules);
+			}
+			waitForOldest = false;
+		}
+	}
+	
+	ExecutorService inductionExecutor(){
+		
+		if(inductionExecutor == null){
+			inductionExecutor = Executors.newCachedThreadPool(new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, "GeRules-induction");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+		return inductionExecutor;
+	}
+	
+	ForkJoinPool inductionPool(){
+		
+		if(inductionParallelismOption.getValue() == 0){
+			return ForkJoinPool.commonPool();
+		}
+		ForkJoinPool pool = inductionPool;
+		if(pool == null){
+			synchronized(this){
+				pool = inductionPool;
+				if(pool == null){
+					pool = new ForkJoinPool(inductionParallelismOption.getValue());
+					inductionPool = pool;
+				}
+			}
+		}
+		return pool;
+	}
+	
 	@Override
 	protected Measurement[] getModelMeasurementsImpl() {
 		// TODO Auto-generated method stub
 		
-		return new Measurement[]{
+		Measurement[] measurements = new Measurement[]{
                 new Measurement("Abstaining Rate", abstainingRate()),
-                new Measurement("Tentative Accuracy", tentativeAccuracy())};
+                new Measurement("Tentative Accuracy", tentativeAccuracy()),
+                new Measurement("Unlearnt Buffer Occupancy", unlearntInstancesList.occupancy())};
+		
+		if(instrumentation == null){
+			return measurements;
+		}
+		
+		List<Measurement> instrumentationMeasurements = instrumentation.measurements(rulesList.size(), unlearntInstancesList.size());
+		Measurement[] allMeasurements = Arrays.copyOf(measurements, measurements.length + instrumentationMeasurements.size());
+		for (int i = 0; i < instrumentationMeasurements.size(); i++) {
+			allMeasurements[measurements.length + i] = instrumentationMeasurements.get(i);
+		}
+		return allMeasurements;
 	}
 
 	@Override
@@ -230,116 +909,385 @@ public class GeRules extends AbstractClassifier {
 	
 	public ArrayList<Rule> RulesCoveredInstance(Instance instance){
 		
-		ArrayList<Rule> coveredRule = new ArrayList<>();
+		// only candidate rules from the index are checked against the instance
+		return ruleIndex.coveredRules(instance);
+	}
+	
+	// add rules to the rules library and the rule index, the enlarged library
+	// is swapped in as a whole so that it is never seen half published
+	void addRulesToLibrary(List<Rule> rules){
+		
+		// library rules made redundant by more general learnt rules, removed once those are added
+		List<Rule> subsumedRules = new ArrayList<>();
+		if(mergesRedundantRules()){
+			rules = mergeRedundantRules(rules, subsumedRules);
+		}
+		
+		List<Rule> updatedRulesList = new ArrayList<>(rulesList.size() + rules.size());
+		updatedRulesList.addAll(rulesList);
+		
+		for (Rule rule : rules) {
+			rule.ruleId = nextRuleId++;
+			updatedRulesList.add(rule);
+			ruleIndex.add(rule);
+			rulesLibraryBytes += rule.estimatedByteSize();
+			if(mergesRedundantRules()){
+				rulesByKey.put(rule.key(), rule);
+			}
+		}
+		rulesList = updatedRulesList;
+		rulesLibraryVersion++;
+		
+		// recompiled on the next prediction, or published at once for concurrent prediction
+		compiledRuleSet = concurrentPredictionOption.isSet() ? new CompiledRuleSet(rulesList, rulesLibraryVersion) : null;
+		
+		if(instrumentation != null){
+			instrumentation.rulesAdded(rules.size());
+		}
+		
+		for (Rule rule : subsumedRules) {
+			removeRuleFromLibrary(rule);
+		}
+		
+		evictRulesOverLimits();
+	}
+	
+	// learnt rules which are not redundant. A learnt rule identical to or subsumed by a
+	// library rule or an earlier learnt rule of the same class is folded into that rule,
+	// rules subsumed by a learnt rule are folded into it and library ones go to subsumedRules
+	List<Rule> mergeRedundantRules(List<Rule> rules, List<Rule> subsumedRules){
+		
+		List<Rule> mergedRules = new ArrayList<>(rules.size());
+		Map<RuleKey, Rule> mergedRulesByKey = new HashMap<>();
+		Set<Rule> subsumedLibraryRules = Collections.newSetFromMap(new IdentityHashMap<Rule, Boolean>());
+		List<Rule> candidates = new ArrayList<>();
+		int noMergedRules = 0;
+		
+		for (Rule rule : rules) {
+			
+			RuleKey key = rule.key();
+			
+			// identical rule, found by its canonical form
+			Rule identicalRule = rulesByKey.get(key);
+			if(identicalRule == null || subsumedLibraryRules.contains(identicalRule)){
+				identicalRule = mergedRulesByKey.get(key);
+			}
+			if(identicalRule != null){
+				identicalRule.fold(rule);
+				noMergedRules++;
+				continue;
+			}
+			
+			// more general rule of the same class, the earliest in the rules library
+			Rule generalRule = null;
+			candidates.clear();
+			ruleIndex.subsumingCandidates(key, candidates);
+			for (Rule libraryRule : candidates) {
+				if((generalRule == null || libraryRule.ruleId < generalRule.ruleId)
+						&& !subsumedLibraryRules.contains(libraryRule) && libraryRule.key().subsumes(key)){
+					generalRule = libraryRule;
+				}
+			}
+			for (int i = 0; generalRule == null && i < mergedRules.size(); i++) {
+				if(mergedRules.get(i).key().subsumes(key)){
+					generalRule = mergedRules.get(i);
+				}
+			}
+			if(generalRule != null){
+				generalRule.fold(rule);
+				noMergedRules++;
+				continue;
+			}
+			
+			// more specific rules of the same class are replaced by the learnt rule
+			List<Rule> subsumedCandidates = ruleIndex.subsumedCandidates(key);
+			for (Rule libraryRule : subsumedCandidates != null ? subsumedCandidates : rulesList) {
+				if(!subsumedLibraryRules.contains(libraryRule) && key.subsumes(libraryRule.key())){
+					rule.fold(libraryRule);
+					subsumedLibraryRules.add(libraryRule);
+					subsumedRules.add(libraryRule);
+					noMergedRules++;
+				}
+			}
+			for (Iterator<Rule> iterator = mergedRules.iterator(); iterator.hasNext();) {
+				Rule mergedRule = iterator.next();
+				if(key.subsumes(mergedRule.key())){
+					rule.fold(mergedRule);
+					iterator.remove();
+					mergedRulesByKey.remove(mergedRule.key());
+					noMergedRules++;
+				}
+			}
+			
+			mergedRules.add(rule);
+			mergedRulesByKey.put(key, rule);
+		}
+		
+		if(instrumentation != null){
+			instrumentation.rulesMerged(noMergedRules);
+		}
+		return mergedRules;
+	}
+	
+	// evict rules in the order of the eviction policy until the rules library is within its limits
+	void evictRulesOverLimits(){
+		
+		if(!rulesLibraryOverLimits()){
+			return;
+		}
+		
+		List<Rule> evictionOrder = new ArrayList<>(rulesList);
+		Collections.sort(evictionOrder, evictionPolicy);
+		
+		for (Rule rule : evictionOrder) {
+			
+			if(!rulesLibraryOverLimits()){
+				break;
+			}
+			removeRuleFromLibrary(rule);
+			
+			if(instrumentation != null){
+				instrumentation.ruleEvicted();
+			}
+		}
+	}
+	
+	boolean rulesLibraryOverLimits(){
+		
+		return (maxRulesOption.getValue() > 0 && rulesList.size() > maxRulesOption.getValue())
+				|| (maxRulesLibraryKBOption.getValue() > 0 && rulesLibraryBytes > 1024L * maxRulesLibraryKBOption.getValue());
+	}
+	
+	// replace the eviction policy chosen by the evictionPolicy option
+	public void setEvictionPolicy(RuleEvictionPolicy evictionPolicyIn){
+		evictionPolicy = evictionPolicyIn;
+	}
+	
+	// estimated memory of the rules library and the instance buffers
+	@Override
+	public int measureByteSize(){
+		
+		long byteSize = rulesLibraryBytes 
+				+ slidingWindowsBuffer.estimatedByteSize() 
+				+ unlearntInstancesList.estimatedByteSize();
+		return (int) Math.min(byteSize, Integer.MAX_VALUE);
+	}
+	
+	// remove a rule from the rules library and the rule index
+	void removeRuleFromLibrary(Rule rule){
+		
+		if(ruleIndex.remove(rule)){
+			
+			rulesLibraryBytes -= rule.estimatedByteSize();
+			rulesLibraryVersion++;
+			if(mergesRedundantRules()){
+				RuleKey key = rule.key();
+				if(rulesByKey.get(key) == rule){
+					rulesByKey.remove(key);
+				}
+			}
+			
+			// readers may be going through the current list and rule set, so both are replaced
+			if(concurrentPredictionOption.isSet()){
+				
+				List<Rule> updatedRulesList = new ArrayList<>(rulesList);
+				updatedRulesList.remove(rule);
+				rulesList = updatedRulesList;
+				compiledRuleSet = compiledRuleSet.withoutRule(rule, rulesLibraryVersion);
+			}
+			else{
+				
+				rulesList.remove(rule);
+				if(compiledRuleSet != null){
+					compiledRuleSet.remove(rule);
+				}
+			}
+			
+			if(instrumentation != null){
+				instrumentation.ruleRemoved();
+			}
+		}
+	}
+	
+	public class PrismClassifier{
+		
+		// smallest standard deviation of a Gaussian distribution for a numeric attribute
+		static final double MIN_STANDARD_DEVIATION = 1.0e-9d;
+		
+		public ArrayList<Rule> learnRules(ArrayList<Instance> instancesListIn){
+			
+			// copy instances into a columnar store
+			WindowStore instancesStore = new WindowStore(instancesListIn.size());
+			for (Instance instance : instancesListIn) {
+				instancesStore.add(instance);
+			}
+			
+			return learnRules(instancesStore);
+		}
+		
+		public ArrayList<Rule> learnRules(WindowStore instancesStoreIn){
+			
+			WindowStore inputInstances = prepareInstances(instancesStoreIn);
+			
+			if(inputInstances == null){
+				return null;
+			}
+			
+			return induceRules(inputInstances, gaussianStatisticsForInduction(inputInstances), seenInstances());
+		}
+		
+		// learn from the rows of a sliding window as they are, the window is only read
+		public ArrayList<Rule> learnRulesFromSlidingWindow(WindowStore window){
+			
+			if(window.noOfClassifications() <= 1){
+				return null;
+			}
+			
+			return induceRules(window, gaussianStatisticsForInduction(window), seenInstances());
+		}
 		
-		for (Rule rule : rulesList) {
-			if(rule.coveredByRule(instance)){
-				coveredRule.add(rule);
+		// copy of a sliding window for a background induction, null if it holds one class only.
+		// The window keeps its rows for the next induction, so no unlearnt instances are kept
+		public WindowStore prepareSlidingWindow(WindowStore window){
+			
+			if(window.noOfClassifications() <= 1){
+				return null;
 			}
+			return window.copy();
 		}
-		return coveredRule;
-	}
-	
-	public class PrismClassifier{
 		
-		public ArrayList<Rule> learnRules(ArrayList<Instance> instancesListIn){
+		// merge the window with the unlearnt buffer, returns null if the merged
+		// instances contain one class only (the window is then offered to the unlearnt buffer)
+		public WindowStore prepareInstances(WindowStore instancesStoreIn){
 			
 			// set training set from input set
-			ArrayList<Instance> inputInstances = new ArrayList<>(instancesListIn);
+			WindowStore inputInstances = instancesStoreIn.copy();
                         
 			// check if there are instances from unlearnt buffer
 			if(unlearntInstancesList.size() > 0){
-				inputInstances.addAll(unlearntInstancesList);
-				unlearntInstancesList.clear();
+				inputInstances.addAll(unlearntInstancesList.instances());
 			}
 			
-			// work out number of class labels
-			 int noClassLabels = inputInstances.get(0).numClasses();
+			// check if the dataset containt more than one class
+			if(inputInstances.noOfClassifications() <= 1){
+				unlearntInstancesList.offer(instancesStoreIn);
+				return null;
+			}
 			
-			// list of attributes for the data instance
-			ArrayList<Attribute> attributesList = Collections.list(inputInstances.get(0).enumerateAttributes());
-						
-						
-			// Original datasets || need to be reset when move on to new classification
-			ArrayList<Instance> originalDataset = new ArrayList<>(inputInstances);
+			unlearntInstancesList.clear();
+			return inputInstances;
+		}
+		
+		// Gaussian statistics for the numeric attributes of the prepared instances: the
+		// statistics of the window itself, or with a fading factor the faded statistics
+		// of earlier windows combined with this one (called on the stream thread).
+		// Rows of an overlapping window were taken in by an earlier induction, so a sliding
+		// window only adds its rows which arrived since then and every row is counted once
+		public GaussianStatistics gaussianStatisticsForInduction(WindowStore inputInstances){
+			
+			if(gaussianFadingFactorOption.getValue() == 0.0d){
+				return inputInstances.gaussianStatistics();
+			}
+			
+			WindowStore newInstances = fadingWindowAdditions != null ? fadingWindowAdditions : inputInstances;
+			if(fadedGaussianStatistics == null){
+				fadedGaussianStatistics = newInstances.gaussianStatistics().copy();
+			}else{
+				fadedGaussianStatistics.fade(gaussianFadingFactorOption.getValue());
+				fadedGaussianStatistics.merge(newInstances.gaussianStatistics());
+			}
+			if(fadingWindowAdditions != null){
+				fadingWindowAdditions.clear();
+			}
+			return fadedGaussianStatistics.copy();
+		}
+		
+		// induce rules from prepared instances, only touches its own arguments so
+		// it can run on a background thread while the stream carries on.
+		// Datasets are handled as bitsets over row positions of the columnar store,
+		// narrowing a dataset is an AND and removing covered instances an ANDNOT.
+		public ArrayList<Rule> induceRules(WindowStore inputInstances, GaussianStatistics gaussianStatistics, int ruleAge){
+			
+			final Induction induction = new Induction(inputInstances, gaussianStatistics, ruleAge);
 			
 			// rules library to store 
 			ArrayList<Rule> rulesList = new ArrayList<>();
 			
-			// dataset inormation instance
-			Instance infoInstance = (Instance) inputInstances.get(0).copy();
-			
-			// check if the dataset containt more than one class
-			if(noOfClassifications(inputInstances) <= 1){
-				unlearntInstancesList.addAll(inputInstances);
-				return null;
+			// classes are independent of each other, so they can be induced in parallel
+			if(parallelClassInductionOption.isSet() && induction.noClassLabels > 1){
+				
+				List<Callable<ArrayList<Rule>>> classInductions = new ArrayList<>();
+				for (int classLabelIndex = 0; classLabelIndex < induction.noClassLabels; classLabelIndex++) {
+					final double classLabel = classLabelIndex;
+					classInductions.add(new Callable<ArrayList<Rule>>() {
+						@Override
+						public ArrayList<Rule> call() {
+							return induceRulesForClass(induction, classLabel);
+						}
+					});
+				}
+				
+				// merge in class label order so the result does not depend on scheduling
+				for (Future<ArrayList<Rule>> classInduction : inductionPool().invokeAll(classInductions)) {
+					try {
+						rulesList.addAll(classInduction.get());
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						throw new RuntimeException("Interrupted while inducing rules", e);
+					} catch (ExecutionException e) {
+						throw new RuntimeException("Rule induction failed", e.getCause());
+					}
+				}
+				return rulesList;
 			}
 			
-			// Map of Gauss distributions for attribute
-			Map<Attribute, Map<Double, NormalDistribution>> numericAttributeClassGaussDistributions = new HashMap<>(initialiseGaussianDistributionForNumericAttribute(infoInstance, inputInstances));
+			// loop through each class label
+			for (double classLabelIndex = 0; classLabelIndex < induction.noClassLabels; classLabelIndex++) {
+				rulesList.addAll(induceRulesForClass(induction, classLabelIndex));
+			}
+			return rulesList;
+		}
 		
+		// induce all rules for one class label, the induction data is only read so
+		// several classes of the same induction can be worked on at the same time
+		private ArrayList<Rule> induceRulesForClass(Induction induction, double classLabelIndex){
 			
+			WindowStore inputInstances = induction.inputInstances;
+			BitSet[] classRows = induction.classRows;
 			
-			// loop through each class label
-			for (double classLabelIndex = 0; classLabelIndex < noClassLabels;) {
+			// rules for this classification
+			ArrayList<Rule> rulesList = new ArrayList<>();
+						
+			// Original datasets || need to be reset when move on to new classification
+			BitSet originalDataset = (BitSet) induction.inputRows.clone();
+			
+			// attribute-value-class counts, reused for every refinement step
+			ContingencyTable contingencyTable = new ContingencyTable(inputInstances.numAttributes(), induction.noClassLabels);
+			
+			while(true){
 				
 				// D dataset for the classification
-				ArrayList<Instance> datasetD = new ArrayList<>(originalDataset);
-				
-				// probabilities for each attribute-value
-				TreeMap<Double, RuleTerm> attributeValuesProbability = new TreeMap<>();
+				BitSet datasetD = (BitSet) originalDataset.clone();
 				
 				// used attribute, and should not be used to induce new rule term
 				List<Attribute>	usedAttributes = new ArrayList<>();
 				
 				// An empty rule
 				Rule rule = new Rule(
-						(int) noClassLabels,
+						induction.noClassLabels,
 						classLabelIndex, 
-						infoInstance.classAttribute(), 
-						GeRules.this.totalSeenInstances);
+						inputInstances.classAttribute(), 
+						induction.ruleAge);
 				boolean goodRule = true;
 				
-				while(containOtherClasses(datasetD,classLabelIndex) != true){
-										
-					// Calcuate probability of occurences for each attribute-value
-					for (Attribute attribute : attributesList) {
-						
-						// stop if this attribute is already used to induce rule term
-						if(usedAttributes.contains(attribute) == false){
-							// check whether the attribute is categorical or numeric
-							if(attribute.isNominal()){
-								
-								for (double i = 0; i < attribute.numValues(); i++) {
-									
-									// create RuleTerm for this attribute-value
-									RuleTerm ruleTerm = new RuleTerm(attribute, i);
-									attributeValuesProbability.put(
-											calculateProbabilityOfOccurence(ruleTerm, datasetD, classLabelIndex),
-											ruleTerm);
-								}
-								
-							// the attribute is numeric
-							}else{
-								
-								NormalDistribution normalDistribution = null;
-								normalDistribution = numericAttributeClassGaussDistributions.get(attribute).get(classLabelIndex);
-								
-								
-								
-								double[] bounds = findLowerUpperNumericAttributeForClassLabel(normalDistribution, attribute, datasetD);
-								double rangeProbability = normalDistribution.probability(bounds[0], bounds[1]);
-								
-								RuleTerm ruleTerm = new RuleTerm(attribute, bounds[0], bounds[1]);
-								
-								attributeValuesProbability.put(rangeProbability, ruleTerm);
-							}				
-						}
-					}	
+				while(containOtherClasses(classRows, datasetD, classLabelIndex) != true){
+					
+					// rule term (attribute-value) with highest conditional probability
+					CandidateTerm bestTerm = selectBestRuleTerm(induction, contingencyTable, datasetD, usedAttributes, classLabelIndex);
 					
 					// check class clash
-					if(attributeValuesProbability.isEmpty()){
-						if(isClassTheMajortiy(datasetD, classLabelIndex)){
+					if(bestTerm == null){
+						if(isClassTheMajortiy(classRows, datasetD, classLabelIndex)){
 							// stop inducing new rule term for current dataset
 							break;
 						}else{
@@ -350,12 +1298,11 @@ public class GeRules extends AbstractClassifier {
 						}
 					}
 					
-					// selecting the ruleTerm (attribute-value) with highest conditional probability
 					// no need to induces ruleterm and the rule term probability = 0 (useless)
-					if(attributeValuesProbability.lastEntry().getKey() == 0.0d){
+					if(bestTerm.probability == 0.0d){
 						break;
 					}
-					RuleTerm selectedRuleTerm = attributeValuesProbability.lastEntry().getValue();
+					RuleTerm selectedRuleTerm = bestTerm.ruleTerm();
 					// add ruleTerm to rule
 					rule.addRuleTerm(selectedRuleTerm);
 					
@@ -365,213 +1312,458 @@ public class GeRules extends AbstractClassifier {
 //					logger.debug("Adding rule term to rule");
 					
 					// creating subset of datasets, containing all instances covered by selected ruleTerm					
-					datasetD = instancesCoveredByRuleTerm(datasetD, selectedRuleTerm);
-					
-					// clear attribute probability
-					attributeValuesProbability.clear();
+					datasetD.and(instancesCoveredByRuleTerm(inputInstances, datasetD, selectedRuleTerm));
 				}
 				
 				// add rule to ruleslibrary
 				if(goodRule && rule.listOfRuleTerm.size() > 0){
 				
 					// no. of instances covered by rule at once complete for statictic monitor
-					rule.setInstancesCoveredWhenRuleCreated(datasetD.size());
+					rule.setInstancesCoveredWhenRuleCreated(datasetD.cardinality());
 					rulesList.add(rule);
 				}
 				
 				// removed instances covered by rule from original datasets
-				originalDataset = removeInstances(originalDataset, datasetD);
+				originalDataset.andNot(datasetD);
 								
 				// check no more instances from given class
-				if(notContainClassification(datasetD, classLabelIndex)){
-					
-					classLabelIndex++;
-					
-					// reset original dataset for new classification
-					originalDataset.clear();
-					originalDataset = new ArrayList<>(inputInstances);
-					
+				if(notContainClassification(classRows, datasetD, classLabelIndex)){
+					return rulesList;
 				}
 			}
-			return rulesList;
 		}
 		
-		private void initPrism(){
-			
+		// best rule term over all unused attributes for the dataset, null if there is no candidate.
+		// Wide datasets can be scored in parallel chunks of attributes, the chunk results are
+		// reduced with the same order as the serial scan so the choice does not change
+		private CandidateTerm selectBestRuleTerm(final Induction induction, final ContingencyTable contingencyTable, 
+				final BitSet datasetD, final List<Attribute> usedAttributes, final double classLabelIndex){
+			
+			if(induction.sampleOrder != null && datasetD.cardinality() >= 2 * termSelectionSampleSizeOption.getValue()){
+				return selectBestRuleTermOnSamples(induction, contingencyTable, datasetD, usedAttributes, classLabelIndex);
+			}
+			return scoreAllAttributes(induction, contingencyTable, datasetD, usedAttributes, classLabelIndex);
 		}
 		
-		private double calculateProbabilityOfOccurence(RuleTerm ruleTerm, ArrayList<Instance> dataset, double classification ){
+		// best rule term over all unused attributes scored on the whole dataset
+		private CandidateTerm scoreAllAttributes(final Induction induction, final ContingencyTable contingencyTable, 
+				final BitSet datasetD, final List<Attribute> usedAttributes, final double classLabelIndex){
 			
-			int totalNoInstancesCoveredByRuleTerm = 0;
-			int totalNoInstancesCoveredByRuleTermWithClassification = 0;
-			List<Instance> instancesList = new ArrayList<>(dataset);
+			int noAttributes = induction.attributesList.size();
+			int chunkSize = attributeChunkSizeOption.getValue();
 			
-			for (Instance instance : instancesList) {
-                            
-				if(instance.value(ruleTerm.attribute) == ruleTerm.value){
-
-					totalNoInstancesCoveredByRuleTerm++;
-					
-					// check if ruleTerm covered instance for specific classification
-					if(instance.classValue() == classification){
-						totalNoInstancesCoveredByRuleTermWithClassification++;
+			if(!parallelAttributeScoringOption.isSet() || noAttributes - usedAttributes.size() <= chunkSize){
+				return scoreAttributes(induction, contingencyTable, datasetD, usedAttributes, classLabelIndex, 0, noAttributes);
+			}
+			
+			List<Callable<CandidateTerm>> chunkScorings = new ArrayList<>();
+			for (int chunkStart = 0; chunkStart < noAttributes; chunkStart += chunkSize) {
+				final int from = chunkStart;
+				final int to = Math.min(chunkStart + chunkSize, noAttributes);
+				chunkScorings.add(new Callable<CandidateTerm>() {
+					@Override
+					public CandidateTerm call() {
+						return scoreAttributes(induction, contingencyTable, datasetD, usedAttributes, classLabelIndex, from, to);
+					}
+				});
+			}
+			
+			CandidateTerm bestTerm = null;
+			for (Future<CandidateTerm> chunkScoring : inductionPool().invokeAll(chunkScorings)) {
+				try {
+					CandidateTerm chunkBestTerm = chunkScoring.get();
+					if(chunkBestTerm != null && chunkBestTerm.betterThan(bestTerm)){
+						bestTerm = chunkBestTerm;
+					}
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new RuntimeException("Interrupted while scoring attributes", e);
+				} catch (ExecutionException e) {
+					throw new RuntimeException("Attribute scoring failed", e.getCause());
+				}
+			}
+			return bestTerm;
+		}
+		
+		// best rule term scored on growing samples of D (rows in the random order of the induction).
+		// A sample is large enough once the best term on it is ahead of the runner-up by more than
+		// the Hoeffding bound for probabilities (range 1), or the bound is below the tie threshold.
+		// The chosen term is then fitted to the whole of D
+		private CandidateTerm selectBestRuleTermOnSamples(Induction induction, ContingencyTable contingencyTable, 
+				BitSet datasetD, List<Attribute> usedAttributes, double classLabelIndex){
+			
+			int noRows = datasetD.cardinality();
+			int[] sampleOrder = induction.sampleOrder;
+			
+			BitSet sample = new BitSet(induction.inputInstances.size());
+			int sampleSize = 0;
+			int position = 0;
+			long targetSampleSize = termSelectionSampleSizeOption.getValue();
+			
+			while(true){
+				
+				// the whole of D once a sample would be more than half of it, no bound needed
+				if(2 * targetSampleSize > noRows){
+					return scoreAllAttributes(induction, contingencyTable, datasetD, usedAttributes, classLabelIndex);
+				}
+				
+				// grow the sample with the next rows of D
+				while(sampleSize < targetSampleSize && position < sampleOrder.length){
+					int row = sampleOrder[position++];
+					if(datasetD.get(row)){
+						sample.set(row);
+						sampleSize++;
 					}
+				}
+				
+				TermRanking ranking = new TermRanking();
+				rankAttributes(induction, contingencyTable, sample, usedAttributes, classLabelIndex, 0, induction.attributesList.size(), ranking);
+				
+				if(ranking.bestTerm != null){
 					
+					double hoeffdingBound = ComputeHoeffdingBound(1.0d, termSelectionConfidenceOption.getValue(), sampleSize);
+					
+					if(ranking.runnerUpTerm == null 
+							|| ranking.bestTerm.probability - ranking.runnerUpTerm.probability > hoeffdingBound 
+							|| hoeffdingBound < termSelectionTieThresholdOption.getValue()){
+						return fitToDataset(induction, ranking.bestTerm, datasetD, classLabelIndex);
+					}
 				}
+				
+				targetSampleSize *= 2;
 			}
+		}
+		
+		// numeric bounds found on a sample are found again on the whole dataset, the value
+		// of a nominal term and its probability being above 0 hold for the whole dataset too
+		private CandidateTerm fitToDataset(Induction induction, CandidateTerm candidateTerm, BitSet datasetD, double classLabelIndex){
 			
-			double probabilityOfOccurencesForClassification = (double) totalNoInstancesCoveredByRuleTermWithClassification / (double) totalNoInstancesCoveredByRuleTerm;
+			if(candidateTerm.bounds == null){
+				return candidateTerm;
+			}
 			
+			NormalDistribution normalDistribution = induction.numericAttributeClassGaussDistributions.get(candidateTerm.attribute).get(classLabelIndex);
+			double[] bounds = findLowerUpperNumericAttributeForClassLabel(normalDistribution, candidateTerm.attribute, induction.numericSplitEngine, datasetD);
 			
-			return Double.isNaN(probabilityOfOccurencesForClassification) ? 0.0d : probabilityOfOccurencesForClassification;
+			CandidateTerm fittedTerm = new CandidateTerm(candidateTerm.attribute, candidateTerm.attributePosition, 
+					normalDistribution.probability(bounds[0], bounds[1]));
+			fittedTerm.bounds = bounds;
+			return fittedTerm;
 		}
 		
-		private ArrayList<Instance> instancesCoveredByRuleTerm(ArrayList<Instance> instances, RuleTerm ruleTerm){
+		// best rule term for the attributes at positions from (inclusive) to (exclusive) of the attributes list
+		private CandidateTerm scoreAttributes(Induction induction, ContingencyTable contingencyTable, 
+				BitSet datasetD, List<Attribute> usedAttributes, double classLabelIndex, int from, int to){
 			
-			List<Instance> instancesList = new ArrayList<>(instances);
-			List<Instance> instancesCoveredList = new ArrayList<>();
+			TermRanking ranking = new TermRanking();
+			rankAttributes(induction, contingencyTable, datasetD, usedAttributes, classLabelIndex, from, to, ranking);
+			return ranking.bestTerm;
+		}
+		
+		// offer the rule terms of the attributes at positions from (inclusive) to (exclusive) to the ranking
+		private void rankAttributes(Induction induction, ContingencyTable contingencyTable, 
+				BitSet datasetD, List<Attribute> usedAttributes, double classLabelIndex, int from, int to, TermRanking ranking){
+			
+			List<Attribute> attributes = induction.attributesList.subList(from, to);
+			
+			// count class labels for every nominal attribute-value in one sweep over D
+			contingencyTable.count(induction.inputInstances, datasetD, attributes, usedAttributes);
 			
-			for (Instance instance : instancesList) {
-				if(ruleTerm.coveredByRuleTerm(instance)){					
-					instancesCoveredList.add(instance);
+			// Calcuate probability of occurences for each attribute-value
+			for (int position = from; position < to; position++) {
+				
+				Attribute attribute = induction.attributesList.get(position);
+				
+				// stop if this attribute is already used to induce rule term
+				if(usedAttributes.contains(attribute)){
+					continue;
+				}
+				
+				// check whether the attribute is categorical or numeric
+				if(attribute.isNominal()){
+					
+					for (int i = 0; i < attribute.numValues(); i++) {
+						
+						CandidateTerm candidateTerm = new CandidateTerm(attribute, position, 
+								calculateProbabilityOfOccurence(attribute, i, contingencyTable, classLabelIndex));
+						candidateTerm.value = i;
+						
+						ranking.offer(candidateTerm);
+					}
+					
+				// the attribute is numeric
+				}else{
+					
+					NormalDistribution normalDistribution = null;
+					normalDistribution = induction.numericAttributeClassGaussDistributions.get(attribute).get(classLabelIndex);
+					
+					// no values of this class were seen for the attribute
+					if(normalDistribution == null){
+						continue;
+					}
+					
+					double[] bounds = findLowerUpperNumericAttributeForClassLabel(normalDistribution, attribute, induction.numericSplitEngine, datasetD);
+					
+					// no values for the attribute in the dataset
+					if(bounds == null){
+						continue;
+					}
+					
+					CandidateTerm candidateTerm = new CandidateTerm(attribute, position, 
+							normalDistribution.probability(bounds[0], bounds[1]));
+					candidateTerm.bounds = bounds;
+					
+					ranking.offer(candidateTerm);
 				}
 			}
+		}
+		
+		// best and second best rule term offered
+		private class TermRanking{
 			
+			CandidateTerm bestTerm;
+			CandidateTerm runnerUpTerm;
 			
-			return (ArrayList<Instance>) instancesCoveredList;
+			void offer(CandidateTerm candidateTerm){
+				
+				if(candidateTerm.betterThan(bestTerm)){
+					runnerUpTerm = bestTerm;
+					bestTerm = candidateTerm;
+				}else if(candidateTerm.betterThan(runnerUpTerm)){
+					runnerUpTerm = candidateTerm;
+				}
+			}
 		}
 		
-		private boolean containOtherClasses(ArrayList<Instance> instances, double classification){
+		// a scored attribute-value, ties are broken by attribute position and then
+		// value index so the same term is chosen whatever order terms are scored in
+		private class CandidateTerm{
+			
+			final Attribute attribute;
+			final int attributePosition;
+			final double probability;
+			
+			// value index for nominal attributes, bounds for numeric attributes
+			int value;
+			double[] bounds;
+			
+			CandidateTerm(Attribute attributeIn, int attributePositionIn, double probabilityIn){
+				attribute = attributeIn;
+				attributePosition = attributePositionIn;
+				probability = probabilityIn;
+			}
 			
-			List<Instance> instancesList = new ArrayList<>(instances);
+			boolean betterThan(CandidateTerm other){
+				
+				if(other == null){
+					return true;
+				}
+				
+				int comparison = Double.compare(probability, other.probability);
+				if(comparison != 0){
+					return comparison > 0;
+				}
+				if(attributePosition != other.attributePosition){
+					return attributePosition < other.attributePosition;
+				}
+				return value < other.value;
+			}
 			
-			for (Instance instance : instancesList) {
-				if(instance.classValue() != classification){
-					return false;
+			RuleTerm ruleTerm(){
+				
+				if(bounds != null){
+					return new RuleTerm(attribute, bounds[0], bounds[1]);
 				}
+				return new RuleTerm(attribute, value);
 			}
-			return true;
 		}
 		
-		private ArrayList<Instance>  removeInstances(ArrayList<Instance> instancesA, ArrayList<Instance> instancesB){
+		// data shared by all classes of one induction, only read once set up
+		private class Induction{
 			
-			ArrayList<Instance> afterRemovedInstancesList = new ArrayList<>();
+			final WindowStore inputInstances;
+			final int ruleAge;
 			
-			InstanceComparator instanceComparator = new InstanceComparator(true);
+			// work out number of class labels
+			final int noClassLabels;
 			
-			List<Instance> instancesAList = new ArrayList<>(instancesA);
-			List<Instance> instancesBList = new ArrayList<>(instancesB);
+			// list of attributes for the data instance
+			final List<Attribute> attributesList;
 			
-			List<Integer> indexInstancesToBeRemoved = new ArrayList<>();
+			// all rows of the input set
+			final BitSet inputRows;
 			
-			int i = 0;			
+			// rows of each class label
+			final BitSet[] classRows;
 			
-			for (Instance instance : instancesAList) {
-				
-				for (Instance instancej : instancesBList) {
-				
-					if(instanceComparator.compare(instance, instancej) == 0){
-						indexInstancesToBeRemoved.add(i);
-						break;
-					}
-				}
-				i++;
-			}
+			// sorted numeric columns, reused for every refinement step
+			final NumericSplitEngine numericSplitEngine;
+			
+			// Map of Gauss distributions for attribute
+			final Map<Attribute, Map<Double, NormalDistribution>> numericAttributeClassGaussDistributions;
 			
-			// Sort the index to be removed
-			Collections.sort(indexInstancesToBeRemoved);
+			// rows in random order from which samples are drawn, null if terms are scored on whole datasets
+			final int[] sampleOrder;
 			
-			// removing all instances of B from A
-			// reverse iteration is used to avoid order mess up in ArrayList
-			for (int j2 = indexInstancesToBeRemoved.size() - 1; j2 >= 0; j2--) {
+			Induction(WindowStore inputInstancesIn, GaussianStatistics gaussianStatistics, int ruleAgeIn){
 				
-				// need to cast to int for removing at index
-				instancesAList.remove((int)indexInstancesToBeRemoved.get(j2));
+				inputInstances = inputInstancesIn;
+				ruleAge = ruleAgeIn;
+				noClassLabels = inputInstances.numClasses();
+				attributesList = inputInstances.attributes();
+				inputRows = inputInstances.allRows();
+				classRows = classRows(inputInstances);
+				numericSplitEngine = new NumericSplitEngine(inputInstances);
+				numericAttributeClassGaussDistributions = initialiseGaussianDistributionForNumericAttribute(inputInstances, gaussianStatistics);
+				sampleOrder = sampledTermSelectionOption.isSet() ? shuffledRows(inputInstances.size(), ruleAge) : null;
+			}
+		}
+		
+		// positions 0 to noRows - 1 in a random order, the same for the same seed
+		private int[] shuffledRows(int noRows, long seed){
+			
+			int[] rows = new int[noRows];
+			for (int row = 0; row < noRows; row++) {
+				rows[row] = row;
 			}
 			
-			for (Instance instance : instancesAList) {
-				afterRemovedInstancesList.add(instance);
+			Random random = new Random(seed);
+			for (int i = noRows - 1; i > 0; i--) {
+				int j = random.nextInt(i + 1);
+				int row = rows[i];
+				rows[i] = rows[j];
+				rows[j] = row;
 			}
-						
-			return afterRemovedInstancesList;
+			return rows;
 		}
 		
-		private boolean notContainClassification(ArrayList<Instance> instances, double classification){
+		private void initPrism(){
 			
-			List<Instance> instancesList = new ArrayList<>(instances);
+		}
+		
+		// probability of the classification given the attribute-value, read from the counts of the current dataset
+		private double calculateProbabilityOfOccurence(Attribute attribute, int value, ContingencyTable contingencyTable, double classification ){
 			
-			for (Instance instance : instancesList) {
-				if(instance.classValue() == classification){
-					
-					return false;
+			int totalNoInstancesCoveredByRuleTerm = contingencyTable.covered(attribute.index(), value);
+			int totalNoInstancesCoveredByRuleTermWithClassification = contingencyTable.coveredWithClass(attribute.index(), value, (int) classification);
+			
+			double probabilityOfOccurencesForClassification = (double) totalNoInstancesCoveredByRuleTermWithClassification / (double) totalNoInstancesCoveredByRuleTerm;
+			
+			
+			return Double.isNaN(probabilityOfOccurencesForClassification) ? 0.0d : probabilityOfOccurencesForClassification;
+		}
+		
+		// rows of the given set covered by the rule term
+		private BitSet instancesCoveredByRuleTerm(WindowStore instancesStore, BitSet rows, RuleTerm ruleTerm){
+			
+			if(instancesStore.isSparse()){
+				return instancesCoveredByRuleTermInEntries(instancesStore, rows, ruleTerm);
+			}
+			
+			BitSet coveredRows = new BitSet(instancesStore.size());
+			
+			for (int row = rows.nextSetBit(0); row >= 0; row = rows.nextSetBit(row + 1)) {
+				if(ruleTerm.coveredByRuleTerm(instancesStore, row)){					
+					coveredRows.set(row);
 				}
 			}
 			
-			return true;
+			return coveredRows;
 		}
 		
-		// check if given class is majority in given dataset
-		private boolean isClassTheMajortiy(ArrayList<Instance> instances, double classification){
+		// rows of the given set covered by the rule term from the entries of the attribute of a
+		// sparse store, rows without an entry hold 0 and are covered if and only if 0 is
+		private BitSet instancesCoveredByRuleTermInEntries(WindowStore instancesStore, BitSet rows, RuleTerm ruleTerm){
 			
-			List<Instance> instancesList = new ArrayList<>(instances);
-			TreeMap<Double, Double> classificationProbability = new TreeMap<>();
-			Attribute classAttribute = instances.get(0).classAttribute();
+			SparseRows.Columns columns = instancesStore.sparseRows().columns(instancesStore.size());
+			int end = columns.end(ruleTerm.attribute.index());
 			
-			for (double i = 0; i < classAttribute.numValues(); i++) {
-				int matchedClassCount = 0;
-				
-				for (Instance instance : instancesList) {
-					if(instance.classValue() == i){
-						matchedClassCount++;
-					}
+			boolean zeroCovered = ruleTerm.coveredByRuleTerm(0.0d);
+			BitSet coveredRows = zeroCovered ? (BitSet) rows.clone() : new BitSet(instancesStore.size());
+			
+			for (int entry = columns.start(ruleTerm.attribute.index()); entry < end; entry++) {
+				int row = columns.row(entry);
+				if(rows.get(row) && ruleTerm.coveredByRuleTerm(columns.value(entry)) != zeroCovered){
+					coveredRows.set(row, !zeroCovered);
 				}
-				
-				classificationProbability.put(((double) matchedClassCount / (double) instancesList.size()), i);
 			}
 			
-			return (classificationProbability.lastEntry().getValue() == classification);
+			return coveredRows;
+		}
+		
+		// rows of each class label in the store
+		private BitSet[] classRows(WindowStore instancesStore){
+			
+			BitSet[] classRows = new BitSet[instancesStore.numClasses()];
+			for (int i = 0; i < classRows.length; i++) {
+				classRows[i] = new BitSet(instancesStore.size());
+			}
+			
+			for (int row = 0; row < instancesStore.size(); row++) {
+				classRows[instancesStore.classLabel(row)].set(row);
+			}
+			return classRows;
 		}
 		
-		// return no. of class labels in the dataset
-		private int noOfClassifications(ArrayList<Instance> instances){
-			Set<Integer> classLabels = new LinkedHashSet<>();
+		// true if all rows are from the given class
+		private boolean containOtherClasses(BitSet[] classRows, BitSet rows, double classification){
 			
-			for (Instance instance : instances) {
-				// add class label to the list if not already exist
-				if(classLabels.contains((int)instance.classValue()) == false){
-					classLabels.add((int)instance.classValue());
+			for (int i = 0; i < classRows.length; i++) {
+				if(i != classification && rows.intersects(classRows[i])){
+					return false;
 				}
 			}
+			return true;
+		}
+		
+		private boolean notContainClassification(BitSet[] classRows, BitSet rows, double classification){
+			
+			return !rows.intersects(classRows[(int) classification]);
+		}
+		
+		// check if given class is majority in given dataset
+		private boolean isClassTheMajortiy(BitSet[] classRows, BitSet rows, double classification){
+			
+			TreeMap<Double, Double> classificationProbability = new TreeMap<>();
+			int noRows = rows.cardinality();
+			
+			for (int i = 0; i < classRows.length; i++) {
+				BitSet rowsOfClass = (BitSet) rows.clone();
+				rowsOfClass.and(classRows[i]);
+				
+				classificationProbability.put(((double) rowsOfClass.cardinality() / (double) noRows), (double) i);
+			}
 			
-			return classLabels.size();
+			return (classificationProbability.lastEntry().getValue() == classification);
 		}
 		
-		private Map<Attribute, Map<Double, NormalDistribution>> initialiseGaussianDistributionForNumericAttribute(Instance instanceInfo, ArrayList<Instance> instancesList){
+		// normal distributions from the running per class statistics, no rescan of the instances
+		private Map<Attribute, Map<Double, NormalDistribution>> initialiseGaussianDistributionForNumericAttribute(WindowStore instancesStore, GaussianStatistics gaussianStatistics){
 			
 			Map<Attribute, Map<Double, NormalDistribution>> numericAttributeClassGaussDistributions = new HashMap<>();
 			
 			// go through each numeric attibute
-			for (Attribute attribute : Collections.list(instanceInfo.enumerateAttributes())) {
+			for (Attribute attribute : instancesStore.attributes()) {
 				
 				// check whether the attribute is numeric
-				if(attribute.isNumeric()){
+				if(!attribute.isNominal()){
 					
 					// for each class label
 					HashMap<Double, NormalDistribution> classLabelDistribution = new HashMap<>();
-					for (int classLabelNo = 0; classLabelNo < instanceInfo.numClasses(); classLabelNo++) {
+					for (int classLabelNo = 0; classLabelNo < instancesStore.numClasses(); classLabelNo++) {
 						
-						// go through all instance in the dataset to create normal distribution
-						SummaryStatistics summaryStatistics = new SummaryStatistics();
-						for (Instance instance : instancesList) {
-							
-							summaryStatistics.addValue(instance.value(attribute));
+						// no distribution for a class without values
+						if(gaussianStatistics.weight(attribute.index(), classLabelNo) == 0.0d){
+							continue;
 						}
 						
 						// create normal distribution for this attribute with corresponding
-						// class label
+						// class label, a single or constant value becomes a narrow peak
+						// (no random generator is needed, only density and probability are used)
 						NormalDistribution normalDistribution = new NormalDistribution(
-								summaryStatistics.getMean(), 
-								summaryStatistics.getStandardDeviation());
+								null,
+								gaussianStatistics.mean(attribute.index(), classLabelNo), 
+								Math.max(gaussianStatistics.standardDeviation(attribute.index(), classLabelNo), MIN_STANDARD_DEVIATION));
 						
 						// map to hold classLabel and distribution
 						classLabelDistribution.put((double) classLabelNo, normalDistribution);
@@ -604,67 +1796,12 @@ public class GeRules extends AbstractClassifier {
 		}
 		
 		// work out lowerbound and upperbound from dataset for given 
-		// normal distribution of numeric attribute
-		private double[] findLowerUpperNumericAttributeForClassLabel(NormalDistribution normalDistribution, Attribute attribute, ArrayList<Instance> instancesList){
-			
-			// density probaility for each numeric value from the attribute from the dataset
-			TreeMap<Double, Double>	densityProbabilitiesOfValues = new TreeMap<>();
-			
-			for (Instance instance : instancesList) {
-				
-				// get value of the attribute from an instance
-				double valueOfAttribute = instance.value(attribute);
-				
-				// calculate density probability
-				double densityProbability = normalDistribution.density(valueOfAttribute);
-				
-				// add to density probability map to find the best later
-				densityProbabilitiesOfValues.put(densityProbability, valueOfAttribute);
-				
-			}
-			
-			double valueWithBestDensityProbability = densityProbabilitiesOfValues.lastEntry().getValue();
-			
-			TreeMap<Double, Double> smallerSideOfValueWithBestProbability = new TreeMap<>();
-			TreeMap<Double, Double> greaterSideOfValueWithBestProbability = new TreeMap<>();
-
-			// work out list of values and their corresponding density probability
-			for (Entry<Double, Double> probabilityValueEntry : densityProbabilitiesOfValues.entrySet()) {
-				
-				// value greater than best value should be added to greater side
-				if(probabilityValueEntry.getValue() > valueWithBestDensityProbability){
-					
-					greaterSideOfValueWithBestProbability.put(probabilityValueEntry.getKey(), probabilityValueEntry.getValue());
-					
-				}
-				// otherwise, should be added to smaller side
-				else if (probabilityValueEntry.getValue() < valueWithBestDensityProbability){
-					
-					smallerSideOfValueWithBestProbability.put(probabilityValueEntry.getKey(), probabilityValueEntry.getValue());
-				}
-				
-				
-			}
-			
-			double[] boundsForAttribute = new double[2];
-			
-
-
-			
-			if(smallerSideOfValueWithBestProbability.isEmpty()){
-				boundsForAttribute[0] = valueWithBestDensityProbability;
-			}else{
-				boundsForAttribute[0] = smallerSideOfValueWithBestProbability.lastEntry().getValue();
-			}
-			
-			if(greaterSideOfValueWithBestProbability.isEmpty()){
-				boundsForAttribute[1] = valueWithBestDensityProbability;
-			}else{
-				boundsForAttribute[1] = greaterSideOfValueWithBestProbability.lastEntry().getValue();
-			}
-			
-			return boundsForAttribute;
+		// normal distribution of numeric attribute, the best value is the one
+		// with the highest density i.e. closest to the mean, the bounds are its
+		// neighbouring values in the dataset (found on the presorted window)
+		private double[] findLowerUpperNumericAttributeForClassLabel(NormalDistribution normalDistribution, Attribute attribute, NumericSplitEngine numericSplitEngine, BitSet rows){
 			
+			return numericSplitEngine.findBounds(attribute.index(), normalDistribution.getMean(), rows);
 		}
 		
 	
@@ -687,12 +1824,27 @@ public class GeRules extends AbstractClassifier {
 		// just for statistic monitor
 		int instancesCoveredWhenRuleCreated;
 		
-		// class distribution of the rule
-		double[] classDistribution;
+		// class distribution of the rule and number of instances that rule matches and correctly
+		// cover, striped counters so the statistics can be read from other threads while the
+		// training thread updates them
+		final DoubleAdder[] classDistribution;
+		final LongAdder noOfCovered = new LongAdder();
+		final LongAdder noOfCorrectlyCovered = new LongAdder();
+		
+		// position of the rule in the rules library, assigned when the rule is added
+		long ruleId;
 		
-		// number of instances that rule matches and correctly cover
-		int noOfCovered;
-		int noOfCorrectlyCovered;
+		// time (no. of seen instances) the rule last covered an instance
+		volatile int lastCoveredAt;
+		
+		// canonical form of the rule, built on first use (rule terms are not changed once learnt)
+		RuleKey key;
+		
+		// estimated heap size of a rule, a class count, a rule term and a reference to any of them
+		static final int RULE_BYTES = 216;
+		static final int CLASS_COUNT_BYTES = 32;
+		static final int RULE_TERM_BYTES = 48;
+		static final int REFERENCE_BYTES = 4;
 		
 		public Rule(int noOfClassLabels, double classificationIn, Attribute classificationAttributeIn, int ageIn){
 			listOfRuleTerm = new ArrayList<>();
@@ -700,11 +1852,15 @@ public class GeRules extends AbstractClassifier {
 			classificationAttribute = classificationAttributeIn;
 			
 			age = ageIn;
+			lastCoveredAt = ageIn;
 			
-			classDistribution = new double[noOfClassLabels];
+			classDistribution = new DoubleAdder[noOfClassLabels];
+			for (int i = 0; i < noOfClassLabels; i++) {
+				classDistribution[i] = new DoubleAdder();
+			}
 			
-			noOfCovered++;
-			noOfCorrectlyCovered++;
+			noOfCovered.increment();
+			noOfCorrectlyCovered.increment();
 			
 		}
 		
@@ -726,26 +1882,70 @@ public class GeRules extends AbstractClassifier {
 		}
 		
 		
+		public RuleKey key(){
+			if(key == null){
+				key = new RuleKey(this);
+			}
+			return key;
+		}
+		
+		// take over the statistics of a redundant rule, the older creation time is kept
+		public void fold(Rule other){
+			
+			for (int i = 0; i < classDistribution.length; i++) {
+				classDistribution[i].add(other.classDistribution[i].sum());
+			}
+			noOfCovered.add(other.noOfCovered.sum());
+			noOfCorrectlyCovered.add(other.noOfCorrectlyCovered.sum());
+			instancesCoveredWhenRuleCreated += other.instancesCoveredWhenRuleCreated;
+			age = Math.min(age, other.age);
+			lastCoveredAt = Math.max(lastCoveredAt, other.lastCoveredAt);
+		}
+		
 		public void updateClassDistribution(Instance instance){
 			
 			// update class distribution of the rule with correct class label
-			classDistribution[(int) instance.classValue()]++;
+			classDistribution[(int) instance.classValue()].add(1.0d);
 			
 		}
 		
 		// return the major class in the rule class distribution
 		public int classWithLargestValueInDistribution(){
-			return Utils.maxIndex(classDistribution);
+			
+			// the first of equally large values, as Utils.maxIndex
+			int classLabel = 0;
+			double largestValue = classDistribution[0].sum();
+			for (int i = 1; i < classDistribution.length; i++) {
+				double value = classDistribution[i].sum();
+				if(value > largestValue){
+					classLabel = i;
+					largestValue = value;
+				}
+			}
+			return classLabel;
 		}
 		
 		// return accuracy rate of this rule
 		public double accRate(){
-			return ((double)noOfCorrectlyCovered/(double)noOfCovered);
+			return ((double)noOfCorrectlyCovered.sum()/(double)noOfCovered.sum());
 		}
 		
 		// return coverage with seen intances
 		public double coverage(){
-			return (double) noOfCovered / (double) totalSeenInstances;
+			return (double) noOfCovered.sum() / (double) seenInstances();
+		}
+		
+		// coverage relative to the instances seen since the rule was created
+		public double coverageSinceCreated(){
+			return (double) noOfCovered.sum() / (double) Math.max(seenInstances() - age, 1);
+		}
+		
+		// rough heap size of the rule with its rule terms and class distribution,
+		// including its entries in the rules library and the rule index
+		public long estimatedByteSize(){
+			return RULE_BYTES 
+					+ (long) classDistribution.length * (CLASS_COUNT_BYTES + REFERENCE_BYTES) 
+					+ (long) listOfRuleTerm.size() * (RULE_TERM_BYTES + REFERENCE_BYTES);
 		}
 		
 		public String printRule(){
@@ -780,7 +1980,7 @@ public class GeRules extends AbstractClassifier {
 		// remove rule if accuracy drops below a threshold
 		public boolean ruleShouldBeRemoved(){
 			
-			if(noOfCovered >= MinRuleTriesOption.getValue()){
+			if(noOfCovered.sum() >= MinRuleTriesOption.getValue()){
 				
 				if(accRate() < ruleValidationThresholdOption.getValue()){
 					return true;
@@ -836,12 +2036,19 @@ public class GeRules extends AbstractClassifier {
 		
 		public boolean coveredByRuleTerm(Instance instance){
 			
+			// the value is looked up once, a sparse instance searches its entries for it
+			return coveredByRuleTerm(instance.value(attribute));
+		}
+		
+		// same check on the value of the attribute (a value index for categorical attributes)
+		public boolean coveredByRuleTerm(double valueOfAttribute){
+			
 			// check whether rule term for categorical or
 			// numeric attribute
 			if(attribute_type == CATEGORICAL_ATTRIBUTE){
 				
 				// index of the value on the attribute from instance matched value in the rule term
-				if(instance.value(attribute) == value){
+				if(valueOfAttribute == value){
 					return true;
 				}
 				
@@ -849,14 +2056,27 @@ public class GeRules extends AbstractClassifier {
 			//perform for numeric attribute rule term in form: x(lower bound) < Attribute <= y(upper bound)
 			else if(attribute_type == NUMERIC_ATTRIBUTE){
 				
-				if(instance.value(attribute) > numericLowerBound && instance.value(attribute) <= numericUpperBound){
+				if(valueOfAttribute > numericLowerBound && valueOfAttribute <= numericUpperBound){
 					return true;
 				}
 				
 			}
 			
+			return false;
+		}
+		
+		// same check as coveredByRuleTerm(Instance) on a row of a columnar store
+		public boolean coveredByRuleTerm(WindowStore instancesStore, int row){
 			
-
+			if(attribute_type == CATEGORICAL_ATTRIBUTE){
+				
+				return instancesStore.nominalValue(row, attribute.index()) == value;
+			}
+			else if(attribute_type == NUMERIC_ATTRIBUTE){
+				
+				double valueOfAttribute = instancesStore.numericValue(row, attribute.index());
+				return valueOfAttribute > numericLowerBound && valueOfAttribute <= numericUpperBound;
+			}
 			
 			return false;
 		}
@@ -896,9 +2116,6 @@ public class GeRules extends AbstractClassifier {
 		// TODO Auto-generated method stub
 		//ArffFileStream arffFileStream = new ArffFileStream("resources/UCI_KDD/nominal/cmc.arff", -1);
 		
-		// read arff file WEKA way
-		DataSource source = new DataSource("data/cmc.arff");
-		
 		// stream generator
 		RandomTreeGenerator treeGenerator = new RandomTreeGenerator();
 		treeGenerator.numClassesOption.setValue(5);
@@ -909,24 +2126,25 @@ public class GeRules extends AbstractClassifier {
 		GeRules gErules = new GeRules();
 		gErules.prepareForUse();
 		
-		// load data into instances set
-		Instances data = source.getDataSet();
-		
-		 // setting class attribute if the data format does not provide this information
-		 // For example, the XRFF format saves the class attribute information as well
-		 if (data.classIndex() == -1)
-		   data.setClassIndex(data.numAttributes() - 1);
-		 
-		 // Using Prism classifier
-		 //hoeffdingRules.learnRules(Collections.list(data.enumerateInstances()));
-		 for (Instance instance : Collections.list(data.enumerateInstances())) {
-			 gErules.trainOnInstanceImpl(instance);
-                         
-                         
-			 gErules.correctlyClassifies(instance);
+		// read the arff file row by row, the same instance object is refilled for every row
+		// (the class attribute is the last one unless the header says otherwise)
+		Instance anInstance = null;
+		try (StreamingInstanceReader reader = StreamingInstanceReader.arff(new File("data/cmc.arff"))) {
+			
+			 // Using Prism classifier
+			 for (Instance instance = reader.next(); instance != null; instance = reader.next()) {
+				 gErules.trainOnInstanceImpl(instance);
+	                         
+	                         
+				 gErules.correctlyClassifies(instance);
+				 
+				 // keep a copy of one instance to look at the rules covering it
+				 if(reader.rowsRead() == 11){
+					 anInstance = (Instance) instance.copy();
+				 }
+			}
 		}
                 
-                Instance anInstance = Collections.list(data.enumerateInstances()).get(10);
                 System.out.println(anInstance);
                 for (Rule aRule : gErules.RulesCoveredInstance(anInstance)) {
                     
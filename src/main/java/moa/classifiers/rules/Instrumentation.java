@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2017 Thien Le, Frederic Stahl - University of Reading, UK
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package moa.classifiers.rules;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import moa.core.Measurement;
+
+// Timings and rules library counters of a GeRules model. Coverage lookups and rule
+// statistic updates are timed on the stream thread, inductions may be timed on a
+// background thread and are recorded under the lock of this object.
+// Per instance only durations are recorded into histograms, JFR events are committed
+// once per induction and once per completed window. The events are kept in their own
+// class (see InstrumentationEvents), which is only loaded on JREs that have jdk.jfr.
+public class Instrumentation implements Serializable {
+
+	// whether the JRE has Flight Recorder events, looked up once without loading any event
+	static final boolean JFR_AVAILABLE = jfrAvailable();
+
+	final LatencyHistogram coverageLookupTimes = new LatencyHistogram();
+	final LatencyHistogram ruleUpdateTimes = new LatencyHistogram();
+
+	// guarded by this, inductions can finish on background threads
+	final LatencyHistogram learnRulesTimes = new LatencyHistogram();
+
+	// rules added to and removed from the rules library over the whole stream
+	long rulesAdded;
+	long rulesRemoved;
+	
+	// rules removed because the rules library was over its limits
+	long rulesEvicted;
+
+	// learnt or library rules folded into an identical or more general rule
+	long rulesMerged;
+
+	// rules added and removed since the last window was completed
+	int rulesAddedInWindow;
+	int rulesRemovedInWindow;
+
+	// rules added and removed while the last completed window was filled
+	int rulesAddedLastWindow;
+	int rulesRemovedLastWindow;
+
+	long completedWindows;
+
+	public void recordCoverageLookup(long startNanos){
+		coverageLookupTimes.record(System.nanoTime() - startNanos);
+	}
+
+	public void recordRuleUpdate(long startNanos){
+		ruleUpdateTimes.record(System.nanoTime() - startNanos);
+	}
+
+	public synchronized void recordInduction(long startNanos, int noInstances, int noRulesInduced){
+
+		long inductionNanos = System.nanoTime() - startNanos;
+		learnRulesTimes.record(inductionNanos);
+
+		if(JFR_AVAILABLE){
+			InstrumentationEvents.ruleInduction(inductionNanos, noInstances, noRulesInduced);
+		}
+	}
+
+	public void rulesAdded(int noRules){
+		rulesAdded += noRules;
+		rulesAddedInWindow += noRules;
+	}
+
+	public void ruleRemoved(){
+		rulesRemoved++;
+		rulesRemovedInWindow++;
+	}
+
+	public void ruleEvicted(){
+		rulesEvicted++;
+	}
+
+	public void rulesMerged(int noOfRules){
+		rulesMerged += noOfRules;
+	}
+
+	// called each time the sliding window is full
+	public void windowCompleted(int rulesLibrarySize, int noUnlearntInstances){
+
+		rulesAddedLastWindow = rulesAddedInWindow;
+		rulesRemovedLastWindow = rulesRemovedInWindow;
+		rulesAddedInWindow = 0;
+		rulesRemovedInWindow = 0;
+		completedWindows++;
+
+		if(JFR_AVAILABLE){
+			InstrumentationEvents.rulesLibrary(rulesLibrarySize, rulesAddedLastWindow, rulesRemovedLastWindow, noUnlearntInstances,
+					coverageLookupTimes, ruleUpdateTimes);
+		}
+	}
+
+	public List<Measurement> measurements(int rulesLibrarySize, int noUnlearntInstances){
+
+		List<Measurement> measurements = new ArrayList<>();
+
+		measurements.add(new Measurement("Rules Library Size", rulesLibrarySize));
+		measurements.add(new Measurement("Unlearnt Instances", noUnlearntInstances));
+		measurements.add(new Measurement("Rules Added", rulesAdded));
+		measurements.add(new Measurement("Rules Removed", rulesRemoved));
+		measurements.add(new Measurement("Rules Evicted", rulesEvicted));
+		measurements.add(new Measurement("Rules Merged", rulesMerged));
+		measurements.add(new Measurement("Rules Added Last Window", rulesAddedLastWindow));
+		measurements.add(new Measurement("Rules Removed Last Window", rulesRemovedLastWindow));
+		measurements.add(new Measurement("Rules Added Per Window", completedWindows == 0 ? 0.0d : (double) (rulesAdded - rulesAddedInWindow) / (double) completedWindows));
+		measurements.add(new Measurement("Rules Removed Per Window", completedWindows == 0 ? 0.0d : (double) (rulesRemoved - rulesRemovedInWindow) / (double) completedWindows));
+
+		addTimes(measurements, "Coverage Lookup", coverageLookupTimes);
+		addTimes(measurements, "Rule Update", ruleUpdateTimes);
+		synchronized (this) {
+			addTimes(measurements, "Learn Rules", learnRulesTimes);
+		}
+
+		return measurements;
+	}
+
+	private static void addTimes(List<Measurement> measurements, String name, LatencyHistogram times){
+
+		measurements.add(new Measurement(name + " Mean (ns)", times.mean()));
+		measurements.add(new Measurement(name + " p50 (ns)", times.percentile(0.5d)));
+		measurements.add(new Measurement(name + " p99 (ns)", times.percentile(0.99d)));
+		measurements.add(new Measurement(name + " Max (ns)", times.max()));
+	}
+
+	private static boolean jfrAvailable(){
+
+		try{
+			Class.forName("jdk.jfr.Event", false, Instrumentation.class.getClassLoader());
+			return true;
+		}catch(ClassNotFoundException | LinkageError e){
+			return false;
+		}
+	}
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2017 Thien Le, Frederic Stahl - University of Reading, UK
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package moa.classifiers.rules;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+// JFR events of the instrumentation. Only Instrumentation refers to this class, and only
+// after checking that jdk.jfr is there, so GeRules loads on JREs without Flight Recorder.
+final class InstrumentationEvents {
+
+	private InstrumentationEvents(){
+	}
+
+	static void ruleInduction(long inductionNanos, int noInstances, int noRulesInduced){
+
+		RuleInductionEvent event = new RuleInductionEvent();
+		if(event.shouldCommit()){
+			event.inductionTime = inductionNanos;
+			event.instances = noInstances;
+			event.rulesInduced = noRulesInduced;
+			event.commit();
+		}
+	}
+
+	static void rulesLibrary(int rulesLibrarySize, int rulesAdded, int rulesRemoved, int noUnlearntInstances,
+			LatencyHistogram coverageLookupTimes, LatencyHistogram ruleUpdateTimes){
+
+		RulesLibraryEvent event = new RulesLibraryEvent();
+		if(event.shouldCommit()){
+			event.rulesLibrarySize = rulesLibrarySize;
+			event.rulesAdded = rulesAdded;
+			event.rulesRemoved = rulesRemoved;
+			event.unlearntInstances = noUnlearntInstances;
+			event.coverageLookupMean = (long) coverageLookupTimes.mean();
+			event.coverageLookupP99 = coverageLookupTimes.percentile(0.99d);
+			event.ruleUpdateMean = (long) ruleUpdateTimes.mean();
+			event.ruleUpdateP99 = ruleUpdateTimes.percentile(0.99d);
+			event.commit();
+		}
+	}
+
+	@Name("moa.classifiers.rules.RuleInduction")
+	@Label("Rule Induction")
+	@Category({"MOA", "GeRules"})
+	@Description("Rules induced by the Prism learner from a full window")
+	static class RuleInductionEvent extends Event {
+
+		@Label("Induction Time")
+		@Timespan(Timespan.NANOSECONDS)
+		long inductionTime;
+
+		@Label("Instances")
+		int instances;
+
+		@Label("Rules Induced")
+		int rulesInduced;
+	}
+
+	@Name("moa.classifiers.rules.RulesLibrary")
+	@Label("Rules Library")
+	@Category({"MOA", "GeRules"})
+	@Description("State of the rules library when a window is completed")
+	static class RulesLibraryEvent extends Event {
+
+		@Label("Rules Library Size")
+		int rulesLibrarySize;
+
+		@Label("Rules Added")
+		int rulesAdded;
+
+		@Label("Rules Removed")
+		int rulesRemoved;
+
+		@Label("Unlearnt Instances")
+		int unlearntInstances;
+
+		@Label("Coverage Lookup Mean")
+		@Timespan(Timespan.NANOSECONDS)
+		long coverageLookupMean;
+
+		@Label("Coverage Lookup p99")
+		@Timespan(Timespan.NANOSECONDS)
+		long coverageLookupP99;
+
+		@Label("Rule Update Mean")
+		@Timespan(Timespan.NANOSECONDS)
+		long ruleUpdateMean;
+
+		@Label("Rule Update p99")
+		@Timespan(Timespan.NANOSECONDS)
+		long ruleUpdateP99;
+	}
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2017 Thien Le, Frederic Stahl - University of Reading, UK
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package moa.classifiers.rules;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+// Histogram of durations in nanoseconds with log-linear buckets: each power of two
+// is split into SUB_BUCKETS equal buckets, so a recorded value is known to within
+// 1/SUB_BUCKETS of itself. Recording is a few arithmetic operations and one array
+// increment, the counts array has a fixed size whatever range of values is seen.
+public class LatencyHistogram implements Serializable {
+
+	static final int SUB_BUCKET_BITS = 3;
+	static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+	long[] counts = new long[(64 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS];
+	long count;
+	long sum;
+	long max;
+
+	public void record(long nanos){
+
+		if(nanos < 0){
+			nanos = 0;
+		}
+		counts[bucketIndex(nanos)]++;
+		count++;
+		sum += nanos;
+		if(nanos > max){
+			max = nanos;
+		}
+	}
+
+	public long count(){
+		return count;
+	}
+
+	// mean duration, 0 if nothing was recorded
+	public double mean(){
+		return count == 0 ? 0.0d : (double) sum / (double) count;
+	}
+
+	public long max(){
+		return max;
+	}
+
+	// upper end of the bucket holding the given quantile (0 to 1), 0 if nothing was recorded
+	public long percentile(double quantile){
+
+		if(count == 0){
+			return 0;
+		}
+
+		long rank = Math.max(1, (long) Math.ceil(quantile * count));
+		long seen = 0;
+		for (int i = 0; i < counts.length; i++) {
+			seen += counts[i];
+			if(seen >= rank){
+				return Math.min(bucketValue(i), max);
+			}
+		}
+		return max;
+	}
+
+	public void clear(){
+		Arrays.fill(counts, 0);
+		count = 0;
+		sum = 0;
+		max = 0;
+	}
+
+	// values below SUB_BUCKETS have a bucket each, larger values share a bucket
+	// with the values that agree in their SUB_BUCKET_BITS + 1 leading bits
+	static int bucketIndex(long value){
+
+		if(value < SUB_BUCKETS){
+			return (int) value;
+		}
+		int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+		int subBucket = (int) (value >>> shift) & (SUB_BUCKETS - 1);
+		return (shift + 1) * SUB_BUCKETS + subBucket;
+	}
+
+	// largest value falling into the bucket
+	static long bucketValue(int index){
+
+		if(index < SUB_BUCKETS){
+			return index;
+		}
+		int shift = index / SUB_BUCKETS - 1;
+		long subBucket = index % SUB_BUCKETS;
+		return ((SUB_BUCKETS + subBucket + 1) << shift) - 1;
+	}
+}
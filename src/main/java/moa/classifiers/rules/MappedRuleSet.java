@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2017 Thien Le, Frederic Stahl - University of Reading, UK
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package moa.classifiers.rules;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.Utils;
+
+// Scoring-only view of a rule model file (see RuleModelFile). The file is memory-mapped
+// and rules are evaluated straight from their records, no Rule objects are built, so
+// opening a model only costs the mapping. Only absolute reads of the buffer are used,
+// a mapped rule set can be shared by any number of threads.
+public class MappedRuleSet {
+
+	final MappedByteBuffer buffer;
+	final int numClasses;
+	final int noRules;
+	final int termsOffset;
+
+	public MappedRuleSet(File file) throws IOException {
+
+		buffer = RuleModelFile.map(file);
+		numClasses = buffer.getInt(RuleModelFile.NUM_CLASSES_OFFSET);
+		noRules = buffer.getInt(RuleModelFile.NO_RULES_OFFSET);
+		termsOffset = RuleModelFile.HEADER_BYTES + noRules * RuleModelFile.RULE_RECORD_BYTES;
+	}
+
+	// same as the constructor, and check that the rules were written for instances of the header
+	public MappedRuleSet(File file, Instances header) throws IOException {
+
+		this(file);
+		RuleModelFile.checkHeader(buffer, header);
+	}
+
+	public int numRules(){
+		return noRules;
+	}
+
+	public int numClasses(){
+		return numClasses;
+	}
+
+	// add one vote per covering rule to the votes of its class, returns the no. of covering rules
+	public int vote(Instance instance, double[] votes){
+
+		int noCoveringRules = 0;
+
+		for (int ruleOffset = RuleModelFile.HEADER_BYTES; ruleOffset < termsOffset; ruleOffset += RuleModelFile.RULE_RECORD_BYTES) {
+
+			int termOffset = termsOffset + buffer.getInt(ruleOffset + RuleModelFile.FIRST_TERM_OFFSET) * RuleModelFile.TERM_RECORD_BYTES;
+			int endOffset = termOffset + buffer.getInt(ruleOffset + RuleModelFile.RULE_NO_TERMS_OFFSET) * RuleModelFile.TERM_RECORD_BYTES;
+
+			boolean covered = true;
+			for (; termOffset < endOffset; termOffset += RuleModelFile.TERM_RECORD_BYTES) {
+
+				double value = instance.value(buffer.getInt(termOffset + RuleModelFile.ATTRIBUTE_INDEX_OFFSET));
+				double lowerBound = buffer.getDouble(termOffset + RuleModelFile.LOWER_BOUND_OFFSET);
+
+				if(buffer.getInt(termOffset + RuleModelFile.TERM_TYPE_OFFSET) == GeRules.RuleTerm.CATEGORICAL_ATTRIBUTE){
+					covered = value == lowerBound;
+				}else{
+					covered = value > lowerBound && value <= buffer.getDouble(termOffset + RuleModelFile.UPPER_BOUND_OFFSET);
+				}
+				if(!covered){
+					break;
+				}
+			}
+
+			if(covered){
+				votes[buffer.getInt(ruleOffset + RuleModelFile.CLASS_LABEL_OFFSET)]++;
+				noCoveringRules++;
+			}
+		}
+		return noCoveringRules;
+	}
+
+	// votes of the covering rules, null if no rule covers the instance
+	public double[] getVotesForInstance(Instance instance){
+
+		double[] votes = new double[numClasses];
+		return vote(instance, votes) > 0 ? votes : null;
+	}
+
+	// class label with most votes, -1 if no rule covers the instance
+	public int classify(Instance instance){
+
+		double[] votes = getVotesForInstance(instance);
+		return votes == null ? -1 : Utils.maxIndex(votes);
+	}
+}
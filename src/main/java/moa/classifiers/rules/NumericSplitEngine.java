@@ -0,0 +1,327 @@
+/*
+ * Copyright (C) 2017 Thien Le, Frederic Stahl - University of Reading, UK
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package moa.classifiers.rules;
+
+import java.util.BitSet;
+
+// Finds the bounds of numeric rule terms for the Prism learner.
+// The value of a dataset with the highest Gaussian density is the value closest to the
+// mean, and among the other values the densest ones on either side are its neighbours,
+// so the bounds are the next smaller and next greater distinct value around it.
+// Each numeric column of the window is sorted once (on first use) into primitive arrays,
+// and the same order is reused by every refinement step of the induction. Datasets much
+// smaller than the window are swept directly instead, which never needs the sort order.
+// A sparse store is never sorted: the entries of the attribute's column are swept, and 0
+// is a candidate value as soon as a row of the dataset has no entry for the attribute.
+// The engine can be shared by threads inducing rules for different class labels.
+public class NumericSplitEngine {
+
+	// a dataset with fewer rows than this share of the window is swept directly
+	static final int DIRECT_SWEEP_RATIO = 8;
+
+	WindowStore instancesStore;
+
+	// per attribute index: values in ascending order without missing values, and their rows
+	double[][] sortedValues;
+	int[][] sortedRows;
+
+	public NumericSplitEngine(WindowStore instancesStoreIn){
+		instancesStore = instancesStoreIn;
+		sortedValues = new double[instancesStore.numAttributes()][];
+		sortedRows = new int[instancesStore.numAttributes()][];
+	}
+
+	// lower and upper bound around the value closest to the mean among the given rows,
+	// null if none of the rows has a value for the attribute
+	public double[] findBounds(int attributeIndex, double mean, BitSet rows){
+
+		int noRows = rows.cardinality();
+		if(noRows == 0){
+			return null;
+		}
+
+		if(instancesStore.isSparse()){
+			return findBoundsInEntries(attributeIndex, mean, rows, noRows);
+		}
+		if((long) noRows * DIRECT_SWEEP_RATIO < instancesStore.size()){
+			return findBoundsBySweep(attributeIndex, mean, rows);
+		}
+		return findBoundsInSortedOrder(attributeIndex, mean, rows);
+	}
+
+	private double[] findBoundsInSortedOrder(int attributeIndex, double mean, BitSet rows){
+
+		int[] valueRows = sortedRows(attributeIndex);
+		double[] values = sortedValues[attributeIndex];
+
+		// first position with a value not smaller than the mean
+		int position = lowerBound(values, mean);
+
+		// nearest rows of the dataset on both sides of the mean
+		int right = position;
+		while(right < values.length && !rows.get(valueRows[right])){
+			right++;
+		}
+		int left = position - 1;
+		while(left >= 0 && !rows.get(valueRows[left])){
+			left--;
+		}
+
+		int best;
+		if(left < 0 && right >= values.length){
+			return null;
+		}else if(left < 0){
+			best = right;
+		}else if(right >= values.length){
+			best = left;
+		}else{
+			// equal distances go to the smaller value
+			best = (values[right] - mean < mean - values[left]) ? right : left;
+		}
+		double bestValue = values[best];
+
+		// next smaller distinct value of the dataset
+		double lowerBound = bestValue;
+		for (int i = best - 1; i >= 0; i--) {
+			if(values[i] < bestValue && rows.get(valueRows[i])){
+				lowerBound = values[i];
+				break;
+			}
+		}
+
+		// next greater distinct value of the dataset
+		double upperBound = bestValue;
+		for (int i = best + 1; i < values.length; i++) {
+			if(values[i] > bestValue && rows.get(valueRows[i])){
+				upperBound = values[i];
+				break;
+			}
+		}
+
+		return new double[]{lowerBound, upperBound};
+	}
+
+	private double[] findBoundsBySweep(int attributeIndex, double mean, BitSet rows){
+
+		double[] column = instancesStore.numericColumn(attributeIndex);
+
+		// value closest to the mean, equal distances go to the smaller value
+		double bestValue = Double.NaN;
+		double bestDistance = Double.POSITIVE_INFINITY;
+		for (int row = rows.nextSetBit(0); row >= 0; row = rows.nextSetBit(row + 1)) {
+			double value = column[row];
+			if(Double.isNaN(value)){
+				continue;
+			}
+			double distance = Math.abs(value - mean);
+			if(distance < bestDistance || (distance == bestDistance && value < bestValue)){
+				bestDistance = distance;
+				bestValue = value;
+			}
+		}
+		if(Double.isNaN(bestValue)){
+			return null;
+		}
+
+		// its neighbouring distinct values
+		double lowerBound = Double.NEGATIVE_INFINITY;
+		double upperBound = Double.POSITIVE_INFINITY;
+		for (int row = rows.nextSetBit(0); row >= 0; row = rows.nextSetBit(row + 1)) {
+			double value = column[row];
+			if(value < bestValue && value > lowerBound){
+				lowerBound = value;
+			}else if(value > bestValue && value < upperBound){
+				upperBound = value;
+			}
+		}
+
+		return new double[]{
+				lowerBound == Double.NEGATIVE_INFINITY ? bestValue : lowerBound,
+				upperBound == Double.POSITIVE_INFINITY ? bestValue : upperBound};
+	}
+
+	private double[] findBoundsInEntries(int attributeIndex, double mean, BitSet rows, int noRows){
+
+		SparseRows.Columns columns = instancesStore.sparseRows().columns(instancesStore.size());
+		int start = columns.start(attributeIndex);
+		int end = columns.end(attributeIndex);
+
+		// value closest to the mean, equal distances go to the smaller value
+		double bestValue = Double.NaN;
+		double bestDistance = Double.POSITIVE_INFINITY;
+		int noEntries = 0;
+		for (int entry = start; entry < end; entry++) {
+			if(!rows.get(columns.row(entry))){
+				continue;
+			}
+			noEntries++;
+			double value = columns.value(entry);
+			if(Double.isNaN(value)){
+				continue;
+			}
+			double distance = Math.abs(value - mean);
+			if(distance < bestDistance || (distance == bestDistance && value < bestValue)){
+				bestDistance = distance;
+				bestValue = value;
+			}
+		}
+
+		// rows of the dataset without an entry hold 0
+		boolean zeros = noEntries < noRows;
+		if(zeros && (Math.abs(mean) < bestDistance || (Math.abs(mean) == bestDistance && 0.0d < bestValue))){
+			bestValue = 0.0d;
+		}
+		if(Double.isNaN(bestValue)){
+			return null;
+		}
+
+		// its neighbouring distinct values
+		double lowerBound = Double.NEGATIVE_INFINITY;
+		double upperBound = Double.POSITIVE_INFINITY;
+		if(zeros){
+			if(0.0d < bestValue){
+				lowerBound = 0.0d;
+			}else if(0.0d > bestValue){
+				upperBound = 0.0d;
+			}
+		}
+		for (int entry = start; entry < end; entry++) {
+			double value = columns.value(entry);
+			if(value < bestValue && value > lowerBound && rows.get(columns.row(entry))){
+				lowerBound = value;
+			}else if(value > bestValue && value < upperBound && rows.get(columns.row(entry))){
+				upperBound = value;
+			}
+		}
+
+		return new double[]{
+				lowerBound == Double.NEGATIVE_INFINITY ? bestValue : lowerBound,
+				upperBound == Double.POSITIVE_INFINITY ? bestValue : upperBound};
+	}
+
+	// rows of a numeric column in value order, sorted on first use
+	private synchronized int[] sortedRows(int attributeIndex){
+
+		if(sortedRows[attributeIndex] == null){
+			sortColumn(attributeIndex);
+		}
+		return sortedRows[attributeIndex];
+	}
+
+	// sort the rows of a numeric column by value, missing values are left out
+	private void sortColumn(int attributeIndex){
+
+		double[] column = instancesStore.numericColumn(attributeIndex);
+
+		int noValues = 0;
+		for (int row = 0; row < instancesStore.size(); row++) {
+			if(!Double.isNaN(column[row])){
+				noValues++;
+			}
+		}
+
+		double[] values = new double[noValues];
+		int[] valueRows = new int[noValues];
+		int i = 0;
+		for (int row = 0; row < instancesStore.size(); row++) {
+			if(!Double.isNaN(column[row])){
+				values[i] = column[row];
+				valueRows[i] = row;
+				i++;
+			}
+		}
+
+		sort(values, valueRows, 0, noValues - 1);
+
+		sortedValues[attributeIndex] = values;
+		sortedRows[attributeIndex] = valueRows;
+	}
+
+	private static int lowerBound(double[] values, double key){
+
+		int low = 0;
+		int high = values.length;
+		while(low < high){
+			int middle = (low + high) >>> 1;
+			if(values[middle] < key){
+				low = middle + 1;
+			}else{
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+	// quicksort of values carrying their rows along, insertion sort for short ranges
+	private static void sort(double[] values, int[] rows, int low, int high){
+
+		while(high - low > 16){
+
+			double pivot = medianOfThree(values[low], values[(low + high) >>> 1], values[high]);
+			int i = low;
+			int j = high;
+			while(i <= j){
+				while(values[i] < pivot){
+					i++;
+				}
+				while(values[j] > pivot){
+					j--;
+				}
+				if(i <= j){
+					swap(values, rows, i, j);
+					i++;
+					j--;
+				}
+			}
+
+			// recurse into the smaller part, loop on the larger one
+			if(j - low < high - i){
+				sort(values, rows, low, j);
+				low = i;
+			}else{
+				sort(values, rows, i, high);
+				high = j;
+			}
+		}
+
+		for (int i = low + 1; i <= high; i++) {
+			double value = values[i];
+			int row = rows[i];
+			int j = i - 1;
+			while(j >= low && values[j] > value){
+				values[j + 1] = values[j];
+				rows[j + 1] = rows[j];
+				j--;
+			}
+			values[j + 1] = value;
+			rows[j + 1] = row;
+		}
+	}
+
+	private static double medianOfThree(double a, double b, double c){
+		return Math.max(Math.min(a, b), Math.min(Math.max(a, b), c));
+	}
+
+	private static void swap(double[] values, int[] rows, int i, int j){
+		double value = values[i];
+		values[i] = values[j];
+		values[j] = value;
+		int row = rows[i];
+		rows[i] = rows[j];
+		rows[j] = row;
+	}
+}
@@ -0,0 +1,377 @@
+/*
+ * Copyright (C) 2017 Thien Le, Frederic Stahl - University of Reading, UK
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package moa.classifiers.rules;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+import moa.classifiers.AbstractClassifier;
+import moa.classifiers.rules.GeRules.Rule;
+import moa.core.DoubleVector;
+import moa.core.Measurement;
+import moa.options.ClassOption;
+import moa.options.IntOption;
+import moa.options.MultiChoiceOption;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.Utils;
+
+// Trains several independent GeRules shards, each on its own thread, on parts of the
+// stream. trainOnInstanceImpl only copies the instance into the ring buffer of its shard,
+// so the stream is ingested on as many cores as there are shards. Predictions add up the
+// votes of the rules snapshots of all shards, or with a merge interval the votes of a
+// merged rule set of all shards in which duplicate rules only vote once.
+// Training is asynchronous: a prediction sees the rules of the instances the shards
+// have got through so far, awaitTraining() waits for the instances handed over.
+public class PartitionedGeRules extends AbstractClassifier {
+
+	public ClassOption baseLearnerOption = new ClassOption(
+			"baseLearner", 
+			'l', 
+			"GeRules learner trained by each shard", 
+			GeRules.class, 
+			"moa.classifiers.rules.GeRules");
+
+	public IntOption numShardsOption = new IntOption(
+			"numShards", 
+			'n', 
+			"Number of shards, each trained on its own thread", 
+		4, 1, Integer.MAX_VALUE);
+
+	public MultiChoiceOption partitioningOption = new MultiChoiceOption(
+			"partitioning", 
+			'd', 
+			"How instances are distributed over the shards", 
+			new String[]{"RoundRobin", "Hash"}, 
+			new String[]{"Instances go to the shards in turn", 
+					"Instances with the same attribute values (apart from the class) go to the same shard"}, 
+		0);
+
+	public IntOption shardBufferSizeOption = new IntOption(
+			"shardBufferSize", 
+			'b', 
+			"Number of instances waiting for each shard before the stream waits", 
+		1024, 2, Integer.MAX_VALUE);
+
+	public IntOption mergeIntervalOption = new IntOption(
+			"mergeInterval", 
+			'm', 
+			"Publish a merged rule set of all shards without duplicate rules every this many training instances, 0 adds up the votes of the shards", 
+		0, 0, Integer.MAX_VALUE);
+
+	@Override
+	public String getPurposeString() {
+		return "G-eRules trained on several shards of the stream in parallel";
+	}
+
+	GeRules[] shards;
+
+	// per shard: rows waiting to be trained (attribute values followed by the instance weight),
+	// no. of instances handed over and no. of instances trained
+	transient RingBuffer<double[]>[] shardBuffers;
+	transient Thread[] shardThreads;
+	long[] submittedInstances;
+	transient AtomicLongArray trainedInstances;
+	transient AtomicReference<Throwable> shardFailure;
+
+	// header of the stream, set from the first training instance
+	Instances header;
+
+	long nextShard;
+
+	// merged rule set of all shards, null if votes of the shards are added up
+	volatile CompiledRuleSet mergedRuleSet;
+	long mergedRuleSetVersion;
+	long instancesSinceMerge;
+
+	DoubleVector observedClassDistribution;
+	int totalSeenInstances;
+	int actualAttempts;
+	int actualAttemptsCorrectlyClassified;
+
+	@Override
+	public boolean isRandomizable() {
+		return false;
+	}
+
+	@Override
+	public void resetLearningImpl() {
+
+		stopShards();
+
+		shards = new GeRules[numShardsOption.getValue()];
+		for (int i = 0; i < shards.length; i++) {
+			shards[i] = newShard();
+		}
+
+		shardBuffers = null;
+		shardThreads = null;
+		submittedInstances = new long[shards.length];
+		trainedInstances = new AtomicLongArray(shards.length);
+		shardFailure = new AtomicReference<>();
+		header = null;
+		nextShard = 0;
+
+		mergedRuleSet = null;
+		mergedRuleSetVersion = 0;
+		instancesSinceMerge = 0;
+
+		observedClassDistribution = new DoubleVector();
+		totalSeenInstances = 0;
+		actualAttempts = 0;
+		actualAttemptsCorrectlyClassified = 0;
+	}
+
+	// a fresh learner from the options of the base learner, a prepared learner cannot be
+	// copied as its runtime state is not serializable
+	private GeRules newShard(){
+
+		GeRules shard;
+		try {
+			shard = (GeRules) ClassOption.cliStringToObject(baseLearnerOption.getValueAsCLIString(), GeRules.class, null);
+		} catch (Exception e) {
+			throw new IllegalArgumentException("Cannot create the base learner " + baseLearnerOption.getValueAsCLIString(), e);
+		}
+
+		// shards are read by predictions while their threads train them
+		shard.concurrentPredictionOption.set();
+		shard.prepareForUse();
+		return shard;
+	}
+
+	@Override
+	public void trainOnInstanceImpl(Instance inst) {
+
+		checkShards();
+
+		if(shardThreads == null){
+			startShards(inst);
+		}
+
+		observedClassDistribution.addToValue((int) inst.classValue(), inst.weight());
+
+		int shard = shardFor(inst);
+		double[] row = shardBuffers[shard].claim();
+		for (int i = 0; i < header.numAttributes(); i++) {
+			row[i] = inst.value(i);
+		}
+		row[header.numAttributes()] = inst.weight();
+		shardBuffers[shard].publish();
+		submittedInstances[shard]++;
+
+		if(mergeIntervalOption.getValue() > 0 && ++instancesSinceMerge >= mergeIntervalOption.getValue()){
+			mergeRuleSets();
+			instancesSinceMerge = 0;
+		}
+	}
+
+	@Override
+	public double[] getVotesForInstance(Instance inst) {
+
+		checkShards();
+
+		totalSeenInstances++;
+
+		double[] classPrediction = new double[inst.numClasses()];
+		int noCoveringRules = 0;
+
+		CompiledRuleSet ruleSet = mergedRuleSet;
+		if(ruleSet != null){
+			noCoveringRules = ruleSet.vote(inst, classPrediction);
+		}else{
+			for (GeRules shard : shards) {
+				noCoveringRules += shard.compiledRuleSet.vote(inst, classPrediction);
+			}
+		}
+
+		if(noCoveringRules > 0){
+
+			actualAttempts++;
+			if(Utils.maxIndex(classPrediction) == (int) inst.classValue()){
+				actualAttemptsCorrectlyClassified++;
+			}
+			return classPrediction;
+		}
+
+		// otherwise, return the majority class
+		return observedClassDistribution.getArrayCopy();
+	}
+
+	// wait until the shards have trained on all instances handed over so far
+	public void awaitTraining(){
+
+		if(shardThreads == null){
+			return;
+		}
+		for (int i = 0; i < shards.length; i++) {
+			while(trainedInstances.get(i) < submittedInstances[i]){
+				checkShards();
+				LockSupport.parkNanos(RingBuffer.PARK_NANOS);
+			}
+		}
+	}
+
+	// rules of all shards without duplicates, a rule is a duplicate of another with
+	// the same class label and the same set of rule terms
+	public List<Rule> mergedRules(){
+
+		Map<RuleKey, Rule> distinctRules = new LinkedHashMap<>();
+		for (GeRules shard : shards) {
+			for (Rule rule : shard.rulesList) {
+				// not rule.key(), the rules belong to the shard threads
+				RuleKey key = new RuleKey(rule);
+				if(!distinctRules.containsKey(key)){
+					distinctRules.put(key, rule);
+				}
+			}
+		}
+		return new ArrayList<>(distinctRules.values());
+	}
+
+	void mergeRuleSets(){
+		mergedRuleSet = new CompiledRuleSet(mergedRules(), ++mergedRuleSetVersion);
+	}
+
+	private int shardFor(Instance inst){
+
+		if(partitioningOption.getChosenIndex() == 0){
+			return (int) (nextShard++ % shards.length);
+		}
+
+		int hash = 17;
+		for (int i = 0; i < header.numAttributes(); i++) {
+			if(i != header.classIndex()){
+				long bits = Double.doubleToLongBits(inst.value(i));
+				hash = 31 * hash + (int) (bits ^ (bits >>> 32));
+			}
+		}
+		hash ^= hash >>> 16;
+		return (hash & Integer.MAX_VALUE) % shards.length;
+	}
+
+	@SuppressWarnings("unchecked")
+	private void startShards(Instance inst){
+
+		header = new Instances(inst.dataset(), 0);
+		final int numAttributes = header.numAttributes();
+
+		shardBuffers = new RingBuffer[shards.length];
+		shardThreads = new Thread[shards.length];
+
+		for (int i = 0; i < shards.length; i++) {
+
+			final int shardIndex = i;
+			final GeRules shard = shards[i];
+			final RingBuffer<double[]> shardBuffer = new RingBuffer<>(shardBufferSizeOption.getValue(), new RingBuffer.SlotFactory<double[]>() {
+				@Override
+				public double[] newSlot() {
+					return new double[numAttributes + 1];
+				}
+			});
+			final AtomicLongArray trained = trainedInstances;
+			final AtomicReference<Throwable> failure = shardFailure;
+			final Instances shardHeader = header;
+
+			shardBuffers[i] = shardBuffer;
+			shardThreads[i] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						StreamingInstanceReader.ReusableInstance instance = new StreamingInstanceReader.ReusableInstance(numAttributes);
+						instance.setDataset(shardHeader);
+
+						for (double[] row = shardBuffer.take(); row != null; row = shardBuffer.take()) {
+							System.arraycopy(row, 0, instance.values(), 0, numAttributes);
+							instance.setWeight(row[numAttributes]);
+							shardBuffer.release();
+
+							shard.trainOnInstance(instance);
+							trained.incrementAndGet(shardIndex);
+						}
+					} catch (Throwable e) {
+						failure.compareAndSet(null, e);
+						shardBuffer.abort();
+					}
+				}
+			}, "GeRules-shard-" + i);
+			shardThreads[i].setDaemon(true);
+			shardThreads[i].start();
+		}
+	}
+
+	// let the threads of the previous model finish what they have and stop
+	private void stopShards(){
+
+		if(shardBuffers != null){
+			for (RingBuffer<double[]> shardBuffer : shardBuffers) {
+				shardBuffer.close();
+			}
+		}
+	}
+
+	private void checkShards(){
+
+		if(shardFailure != null && shardFailure.get() != null){
+			throw new RuntimeException("Training of a shard failed", shardFailure.get());
+		}
+	}
+
+	// abstaining rate
+	public double abstainingRate(){
+		return (double) actualAttempts / (double) totalSeenInstances;
+	}
+
+	// tentative accuracy
+	public double tentativeAccuracy(){
+		return (double) actualAttemptsCorrectlyClassified / (double) actualAttempts;
+	}
+
+	@Override
+	protected Measurement[] getModelMeasurementsImpl() {
+
+		int noShardRules = 0;
+		for (GeRules shard : shards) {
+			noShardRules += shard.rulesList.size();
+		}
+		CompiledRuleSet ruleSet = mergedRuleSet;
+
+		return new Measurement[]{
+				new Measurement("Abstaining Rate", abstainingRate()),
+				new Measurement("Tentative Accuracy", tentativeAccuracy()),
+				new Measurement("Shards", shards.length),
+				new Measurement("Shard Rules", noShardRules),
+				new Measurement("Merged Rules", ruleSet == null ? 0 : ruleSet.noRules)};
+	}
+
+	@Override
+	public int measureByteSize(){
+
+		long byteSize = 0;
+		for (GeRules shard : shards) {
+			byteSize += shard.measureByteSize();
+		}
+		return (int) Math.min(byteSize, Integer.MAX_VALUE);
+	}
+
+	@Override
+	public void getModelDescription(StringBuilder out, int indent) {
+	}
+}
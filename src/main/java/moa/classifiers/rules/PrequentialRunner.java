@@ -0,0 +1,267 @@
+/*
+ * Copyright (C) 2017 Thien Le, Frederic Stahl - University of Reading, UK
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package moa.classifiers.rules;
+
+import java.io.File;
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReference;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.Utils;
+
+// Prequential (test-then-train) evaluation of GeRules on an ARFF file without the MOA
+// task framework. Three threads work as a pipeline connected by ring buffers: the
+// parser reads rows into preallocated value arrays, the learner predicts and then
+// trains on each instance, and the reporter aggregates the outcomes and prints a line
+// every reportInterval instances (only at the end of the stream if it is 0).
+//
+//   java moa.classifiers.rules.PrequentialRunner data.arff [-i reportInterval] [-b bufferSize] [-l "GeRules options"]
+public class PrequentialRunner {
+
+	static final String REPORT_HEADER = "instances,seconds,instancesPerSecond,accuracy,abstainingRate,tentativeAccuracy,rules";
+
+	final File file;
+	final GeRules geRules;
+	final long reportInterval;
+	final int bufferSize;
+	final PrintStream out;
+
+	// final values of the last run
+	long instances;
+	double accuracy;
+	double abstainingRate;
+	double tentativeAccuracy;
+
+	public PrequentialRunner(File fileIn, GeRules geRulesIn, long reportIntervalIn, int bufferSizeIn, PrintStream outIn){
+		if(reportIntervalIn < 0){
+			throw new IllegalArgumentException("Report interval must not be negative: " + reportIntervalIn);
+		}
+		file = fileIn;
+		geRules = geRulesIn;
+		reportInterval = reportIntervalIn;
+		bufferSize = bufferSizeIn;
+		out = outIn;
+	}
+
+	// outcome of testing one instance, passed from the learner to the reporter
+	static class Outcome {
+		boolean correct;
+		boolean attempted;
+		boolean attemptCorrect;
+		int rulesLibrarySize;
+	}
+
+	public void run() throws Exception {
+
+		final StreamingInstanceReader reader = StreamingInstanceReader.arff(file);
+		final Instances header = reader.header();
+		final int numAttributes = header.numAttributes();
+
+		// attribute values followed by the instance weight
+		final RingBuffer<double[]> rows = new RingBuffer<>(bufferSize, new RingBuffer.SlotFactory<double[]>() {
+			@Override
+			public double[] newSlot() {
+				return new double[numAttributes + 1];
+			}
+		});
+		final RingBuffer<Outcome> outcomes = new RingBuffer<>(bufferSize, new RingBuffer.SlotFactory<Outcome>() {
+			@Override
+			public Outcome newSlot() {
+				return new Outcome();
+			}
+		});
+		final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+		Thread parser = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					for (Instance instance = reader.next(); instance != null; instance = reader.next()) {
+						double[] row = rows.claim();
+						System.arraycopy(reader.values, 0, row, 0, numAttributes);
+						row[numAttributes] = instance.weight();
+						rows.publish();
+					}
+					rows.close();
+				} catch (Throwable e) {
+					fail(failure, e, rows, outcomes);
+				}
+			}
+		}, "GeRules-parser");
+
+		Thread learner = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					StreamingInstanceReader.ReusableInstance instance = new StreamingInstanceReader.ReusableInstance(numAttributes);
+					instance.setDataset(header);
+					double[] votes = new double[header.numClasses()];
+
+					for (double[] row = rows.take(); row != null; row = rows.take()) {
+
+						System.arraycopy(row, 0, instance.values(), 0, numAttributes);
+						instance.setWeight(row[numAttributes]);
+						rows.release();
+
+						// the learner abstains if no rule covers the instance
+						Arrays.fill(votes, 0.0d);
+						int noCoveringRules = geRules.predict(instance, votes);
+
+						Outcome outcome = outcomes.claim();
+						outcome.correct = Utils.maxIndex(votes) == (int) instance.classValue();
+						outcome.attempted = noCoveringRules > 0;
+						outcome.attemptCorrect = outcome.attempted && outcome.correct;
+
+						geRules.trainOnInstanceImpl(instance);
+
+						outcome.rulesLibrarySize = geRules.rulesList.size();
+						outcomes.publish();
+					}
+					outcomes.close();
+				} catch (Throwable e) {
+					fail(failure, e, rows, outcomes);
+				}
+			}
+		}, "GeRules-learner");
+
+		parser.start();
+		learner.start();
+
+		// the calling thread reports
+		try {
+			report(outcomes);
+		} catch (Throwable e) {
+			fail(failure, e, rows, outcomes);
+		}
+
+		parser.join();
+		learner.join();
+		reader.close();
+
+		if(failure.get() != null){
+			Throwable e = failure.get();
+			if(e instanceof Exception){
+				throw (Exception) e;
+			}
+			throw new RuntimeException(e);
+		}
+	}
+
+	private void report(RingBuffer<Outcome> outcomes){
+
+		long seen = 0;
+		long correct = 0;
+		long attempts = 0;
+		long attemptsCorrectlyClassified = 0;
+		int rulesLibrarySize = 0;
+
+		long start = System.nanoTime();
+		long intervalStart = start;
+		long intervalInstances = 0;
+
+		out.println(REPORT_HEADER);
+
+		for (Outcome outcome = outcomes.take(); outcome != null; outcome = outcomes.take()) {
+
+			seen++;
+			intervalInstances++;
+			if(outcome.correct){
+				correct++;
+			}
+			if(outcome.attempted){
+				attempts++;
+			}
+			if(outcome.attemptCorrect){
+				attemptsCorrectlyClassified++;
+			}
+			rulesLibrarySize = outcome.rulesLibrarySize;
+			outcomes.release();
+
+			if(reportInterval > 0 && seen % reportInterval == 0){
+				long now = System.nanoTime();
+				printReport(seen, now - start, intervalInstances, now - intervalStart, correct, attempts, attemptsCorrectlyClassified, rulesLibrarySize);
+				intervalStart = now;
+				intervalInstances = 0;
+			}
+		}
+
+		long now = System.nanoTime();
+		if(intervalInstances > 0 || seen == 0){
+			printReport(seen, now - start, intervalInstances, now - intervalStart, correct, attempts, attemptsCorrectlyClassified, rulesLibrarySize);
+		}
+
+		instances = seen;
+		accuracy = (double) correct / (double) seen;
+		abstainingRate = (double) attempts / (double) seen;
+		tentativeAccuracy = (double) attemptsCorrectlyClassified / (double) attempts;
+	}
+
+	// throughput over the last interval, the rates over the whole stream so far
+	private void printReport(long seen, long elapsedNanos, long intervalInstances, long intervalNanos, 
+			long correct, long attempts, long attemptsCorrectlyClassified, int rulesLibrarySize){
+
+		out.println(seen 
+				+ "," + elapsedNanos / 1.0e9d 
+				+ "," + intervalInstances / (intervalNanos / 1.0e9d) 
+				+ "," + (double) correct / (double) seen 
+				+ "," + (double) attempts / (double) seen 
+				+ "," + (double) attemptsCorrectlyClassified / (double) attempts 
+				+ "," + rulesLibrarySize);
+	}
+
+	private static void fail(AtomicReference<Throwable> failure, Throwable e, RingBuffer<?>... ringBuffers){
+
+		failure.compareAndSet(null, e);
+		for (RingBuffer<?> ringBuffer : ringBuffers) {
+			ringBuffer.abort();
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+
+		if(args.length == 0){
+			System.err.println("Usage: PrequentialRunner <file.arff> [-i reportInterval, 0 for the end only] [-b bufferSize] [-l \"GeRules options\"]");
+			System.exit(1);
+		}
+
+		long reportInterval = 100000;
+		int bufferSize = 4096;
+		String learnerOptions = "";
+
+		for (int i = 1; i < args.length; i++) {
+			if(args[i].equals("-i") && i + 1 < args.length){
+				reportInterval = Long.parseLong(args[++i]);
+				if(reportInterval < 0){
+					throw new IllegalArgumentException("Report interval must not be negative: " + reportInterval);
+				}
+			}else if(args[i].equals("-b") && i + 1 < args.length){
+				bufferSize = Integer.parseInt(args[++i]);
+			}else if(args[i].equals("-l") && i + 1 < args.length){
+				learnerOptions = args[++i];
+			}else{
+				throw new IllegalArgumentException("Unknown argument: " + args[i]);
+			}
+		}
+
+		GeRules geRules = new GeRules();
+		geRules.getOptions().setViaCLIString(learnerOptions);
+		geRules.prepareForUse();
+
+		new PrequentialRunner(new File(args[0]), geRules, reportInterval, bufferSize, System.out).run();
+	}
+}
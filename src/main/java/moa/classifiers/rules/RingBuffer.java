@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2017 Thien Le, Frederic Stahl - University of Reading, UK
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package moa.classifiers.rules;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+// Bounded buffer between one producer thread and one consumer thread. The slots are
+// allocated up front and reused: the producer claims the next free slot, fills it and
+// publishes it, the consumer takes the next published slot, reads it and releases it.
+// Threads spin briefly and then park while the buffer is full or empty.
+public class RingBuffer<E> {
+
+	static final int SPINS_BEFORE_PARKING = 100;
+	static final long PARK_NANOS = 10000L;
+
+	final Object[] slots;
+	final int mask;
+
+	// sequence numbers of the next slot to publish and the next slot to release
+	final AtomicLong published = new AtomicLong();
+	final AtomicLong released = new AtomicLong();
+
+	// set by the producer after its last slot, or by either side if it failed
+	volatile boolean closed;
+	volatile boolean aborted;
+
+	// capacity is rounded up to a power of two
+	public RingBuffer(int capacity, SlotFactory<E> slotFactory){
+
+		int size = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+		slots = new Object[size];
+		mask = size - 1;
+		for (int i = 0; i < size; i++) {
+			slots[i] = slotFactory.newSlot();
+		}
+	}
+
+	public interface SlotFactory<E> {
+		E newSlot();
+	}
+
+	// next free slot, waits while the buffer is full
+	@SuppressWarnings("unchecked")
+	public E claim(){
+
+		long sequence = published.get();
+		int spins = 0;
+		while(sequence - released.get() >= slots.length){
+			checkNotAborted();
+			spins = idle(spins);
+		}
+		return (E) slots[(int) sequence & mask];
+	}
+
+	// hand the claimed slot to the consumer
+	public void publish(){
+		published.lazySet(published.get() + 1);
+	}
+
+	// no more slots will be published
+	public void close(){
+		closed = true;
+	}
+
+	// next published slot, waits while the buffer is empty, null once the producer closed the buffer and it is empty
+	@SuppressWarnings("unchecked")
+	public E take(){
+
+		long sequence = released.get();
+		int spins = 0;
+		while(sequence == published.get()){
+			checkNotAborted();
+			if(closed && sequence == published.get()){
+				return null;
+			}
+			spins = idle(spins);
+		}
+		return (E) slots[(int) sequence & mask];
+	}
+
+	// give the taken slot back to the producer
+	public void release(){
+		released.lazySet(released.get() + 1);
+	}
+
+	// make the other side stop waiting after a failure
+	public void abort(){
+		aborted = true;
+	}
+
+	private void checkNotAborted(){
+
+		if(aborted){
+			throw new IllegalStateException("Ring buffer was aborted");
+		}
+	}
+
+	private static int idle(int spins){
+
+		if(spins < SPINS_BEFORE_PARKING){
+			return spins + 1;
+		}
+		LockSupport.parkNanos(PARK_NANOS);
+		return spins;
+	}
+}
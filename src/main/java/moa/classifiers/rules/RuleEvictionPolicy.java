@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2017 Thien Le, Frederic Stahl - University of Reading, UK
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package moa.classifiers.rules;
+
+import java.io.Serializable;
+import java.util.Comparator;
+import moa.classifiers.rules.GeRules.Rule;
+
+// Order in which rules are evicted when the rules library is over its limits, rules
+// comparing as smaller are evicted first. The built-in policies can be chosen with the
+// evictionPolicy option, other policies can be set with GeRules.setEvictionPolicy.
+// Ties are broken by rules library order, so older rules go first.
+public abstract class RuleEvictionPolicy implements Comparator<Rule>, Serializable {
+
+	public static final String[] POLICY_LABELS = {
+			"LeastRecentlyCovered", "LowestAccuracy", "Oldest", "LowestCoverage"};
+
+	public static final String[] POLICY_DESCRIPTIONS = {
+			"Evict the rule that has not covered an instance for the longest time",
+			"Evict the rule with the lowest accuracy rate",
+			"Evict the rule created first",
+			"Evict the rule covering the fewest instances per instance seen since it was created"};
+
+	// built-in policy at the given position of POLICY_LABELS
+	public static RuleEvictionPolicy forIndex(int policyIndex){
+
+		switch(policyIndex){
+		case 0:
+			return new LeastRecentlyCovered();
+		case 1:
+			return new LowestAccuracy();
+		case 2:
+			return new Oldest();
+		case 3:
+			return new LowestCoverage();
+		default:
+			throw new IllegalArgumentException("Unknown eviction policy: " + policyIndex);
+		}
+	}
+
+	protected abstract int comparePriority(Rule ruleA, Rule ruleB);
+
+	@Override
+	public int compare(Rule ruleA, Rule ruleB){
+
+		int comparison = comparePriority(ruleA, ruleB);
+		if(comparison != 0){
+			return comparison;
+		}
+		return Long.compare(ruleA.ruleId, ruleB.ruleId);
+	}
+
+	public static class LeastRecentlyCovered extends RuleEvictionPolicy {
+
+		@Override
+		protected int comparePriority(Rule ruleA, Rule ruleB){
+			return Integer.compare(ruleA.lastCoveredAt, ruleB.lastCoveredAt);
+		}
+	}
+
+	public static class LowestAccuracy extends RuleEvictionPolicy {
+
+		@Override
+		protected int comparePriority(Rule ruleA, Rule ruleB){
+			return Double.compare(ruleA.accRate(), ruleB.accRate());
+		}
+	}
+
+	public static class Oldest extends RuleEvictionPolicy {
+
+		@Override
+		protected int comparePriority(Rule ruleA, Rule ruleB){
+			return Integer.compare(ruleA.age, ruleB.age);
+		}
+	}
+
+	// coverage() relative to the instances seen since the rule was created, so rules
+	// that were just induced do not look rarely used
+	public static class LowestCoverage extends RuleEvictionPolicy {
+
+		@Override
+		protected int comparePriority(Rule ruleA, Rule ruleB){
+			return Double.compare(ruleA.coverageSinceCreated(), ruleB.coverageSinceCreated());
+		}
+	}
+}
@@ -0,0 +1,540 @@
+/*
+ * Copyright (C) 2017 Thien Le, Frederic Stahl - University of Reading, UK
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package moa.classifiers.rules;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import moa.classifiers.rules.GeRules.Rule;
+import moa.classifiers.rules.GeRules.RuleTerm;
+import weka.core.Instance;
+import weka.core.Utils;
+
+// Index over the rules library so that coverage lookups only touch candidate rules.
+// Every rule is filed under a single anchor term: nominal terms go into hash buckets
+// keyed by attribute and value index, numeric terms go into an interval tree per attribute.
+// Candidates found through the anchor are then checked against the remaining rule terms.
+// To merge redundant rules the index can also file every rule under each of its terms, so
+// rules more general or more specific than a given rule are found without a library scan.
+public class RuleIndex {
+
+	// order rules the same way as they were added to the rules library
+	static final Comparator<Rule> LIBRARY_ORDER = new Comparator<Rule>() {
+		@Override
+		public int compare(Rule ruleA, Rule ruleB) {
+			return Long.compare(ruleA.ruleId, ruleB.ruleId);
+		}
+	};
+
+	// rules without any rule term cover every instance
+	List<Rule> unconditionalRules;
+
+	// attribute index -> value index -> rules anchored on that nominal attribute-value
+	Map<Integer, Map<Integer, List<Rule>>> nominalBuckets;
+
+	// attribute index -> interval tree over rules anchored on that numeric attribute
+	Map<Integer, IntervalTree> numericTrees;
+
+	// term bucket (see termBucket) -> rules with such a term in rules library order,
+	// null unless the index is asked to keep it
+	Map<Long, List<Rule>> termBuckets;
+
+	int size;
+
+	public RuleIndex(){
+		this(false);
+	}
+
+	public RuleIndex(boolean indexAllTerms){
+		unconditionalRules = new ArrayList<>();
+		nominalBuckets = new HashMap<>();
+		numericTrees = new HashMap<>();
+		termBuckets = indexAllTerms ? new HashMap<Long, List<Rule>>() : null;
+		size = 0;
+	}
+
+	public int size(){
+		return size;
+	}
+
+	public void clear(){
+		unconditionalRules.clear();
+		nominalBuckets.clear();
+		numericTrees.clear();
+		if(termBuckets != null){
+			termBuckets.clear();
+		}
+		size = 0;
+	}
+
+	public void add(Rule rule){
+
+		RuleTerm anchor = anchorTerm(rule);
+
+		if(anchor == null){
+			unconditionalRules.add(rule);
+		}
+		else if(anchor.attribute_type == RuleTerm.CATEGORICAL_ATTRIBUTE){
+
+			Map<Integer, List<Rule>> valueBuckets = nominalBuckets.get(anchor.attribute.index());
+			if(valueBuckets == null){
+				valueBuckets = new HashMap<>();
+				nominalBuckets.put(anchor.attribute.index(), valueBuckets);
+			}
+
+			List<Rule> bucket = valueBuckets.get((int) anchor.value);
+			if(bucket == null){
+				bucket = new ArrayList<>();
+				valueBuckets.put((int) anchor.value, bucket);
+			}
+			bucket.add(rule);
+		}
+		else{
+
+			IntervalTree intervalTree = numericTrees.get(anchor.attribute.index());
+			if(intervalTree == null){
+				intervalTree = new IntervalTree();
+				numericTrees.put(anchor.attribute.index(), intervalTree);
+			}
+			intervalTree.add(rule, anchor.numericLowerBound, anchor.numericUpperBound);
+		}
+
+		if(termBuckets != null){
+			for (RuleTerm ruleTerm : rule.listOfRuleTerm) {
+				Long bucketKey = termBucket(ruleTerm);
+				List<Rule> bucket = termBuckets.get(bucketKey);
+				if(bucket == null){
+					bucket = new ArrayList<>();
+					termBuckets.put(bucketKey, bucket);
+				}
+				// a rule with two terms on one numeric attribute is filed once
+				if(bucket.isEmpty() || bucket.get(bucket.size() - 1) != rule){
+					bucket.add(rule);
+				}
+			}
+		}
+
+		size++;
+	}
+
+	public boolean remove(Rule rule){
+
+		RuleTerm anchor = anchorTerm(rule);
+		boolean removed = false;
+
+		if(anchor == null){
+			removed = unconditionalRules.remove(rule);
+		}
+		else if(anchor.attribute_type == RuleTerm.CATEGORICAL_ATTRIBUTE){
+
+			Map<Integer, List<Rule>> valueBuckets = nominalBuckets.get(anchor.attribute.index());
+			if(valueBuckets != null){
+				List<Rule> bucket = valueBuckets.get((int) anchor.value);
+				if(bucket != null){
+					removed = bucket.remove(rule);
+
+					// drop empty buckets so lookups do not visit them
+					if(bucket.isEmpty()){
+						valueBuckets.remove((int) anchor.value);
+					}
+				}
+				if(valueBuckets.isEmpty()){
+					nominalBuckets.remove(anchor.attribute.index());
+				}
+			}
+		}
+		else{
+
+			IntervalTree intervalTree = numericTrees.get(anchor.attribute.index());
+			if(intervalTree != null){
+				removed = intervalTree.remove(rule, anchor.numericLowerBound);
+				if(intervalTree.isEmpty()){
+					numericTrees.remove(anchor.attribute.index());
+				}
+			}
+		}
+
+		if(removed && termBuckets != null){
+			for (RuleTerm ruleTerm : rule.listOfRuleTerm) {
+				Long bucketKey = termBucket(ruleTerm);
+				List<Rule> bucket = termBuckets.get(bucketKey);
+				if(bucket != null){
+					bucket.remove(rule);
+					if(bucket.isEmpty()){
+						termBuckets.remove(bucketKey);
+					}
+				}
+			}
+		}
+
+		if(removed){
+			size--;
+		}
+		return removed;
+	}
+
+	// indexed rules which may subsume a rule of the key (see RuleKey.subsumes): each term of
+	// such a rule is implied by a term of the key, its anchor term included, so only the
+	// buckets of the key's nominal terms and the numeric anchors containing the key's
+	// numeric terms are visited. Candidates still have to be checked with subsumes
+	public void subsumingCandidates(RuleKey key, List<Rule> candidates){
+
+		candidates.addAll(unconditionalRules);
+
+		for (int i = 0; i < key.noOfTerms(); i++) {
+
+			int attributeIndex = key.attributeIndices[i];
+			if(key.nominalTerms[i]){
+				Map<Integer, List<Rule>> valueBuckets = nominalBuckets.get(attributeIndex);
+				List<Rule> bucket = valueBuckets == null ? null : valueBuckets.get((int) key.lowerBounds[i]);
+				if(bucket != null){
+					candidates.addAll(bucket);
+				}
+			}else{
+				IntervalTree intervalTree = numericTrees.get(attributeIndex);
+				if(intervalTree != null){
+					intervalTree.containing(key.lowerBounds[i], key.upperBounds[i], candidates);
+				}
+			}
+		}
+	}
+
+	// indexed rules which may be subsumed by a rule of the key: such a rule has a term on
+	// every attribute of the key, the nominal ones with the same value, so the smallest term
+	// bucket of the key holds them all. In rules library order, null for a key without terms
+	// or if the index does not keep term buckets
+	public List<Rule> subsumedCandidates(RuleKey key){
+
+		if(termBuckets == null || key.noOfTerms() == 0){
+			return null;
+		}
+
+		List<Rule> candidates = null;
+		for (int i = 0; i < key.noOfTerms(); i++) {
+			List<Rule> bucket = termBuckets.get(termBucket(key.attributeIndices[i], key.nominalTerms[i], key.lowerBounds[i]));
+			if(bucket == null){
+				return Collections.emptyList();
+			}
+			if(candidates == null || bucket.size() < candidates.size()){
+				candidates = bucket;
+			}
+		}
+		return candidates;
+	}
+
+	// return all indexed rules covering the instance, in rules library order
+	public ArrayList<Rule> coveredRules(Instance instance){
+
+		ArrayList<Rule> coveredRules = new ArrayList<>();
+
+		for (Rule rule : unconditionalRules) {
+			coveredRules.add(rule);
+		}
+
+		// nominal anchors: one hash lookup per indexed attribute
+		for (Map.Entry<Integer, Map<Integer, List<Rule>>> entry : nominalBuckets.entrySet()) {
+			double value = instance.value(entry.getKey());
+			if(Utils.isMissingValue(value)){
+				continue;
+			}
+			List<Rule> bucket = entry.getValue().get((int) value);
+			if(bucket != null){
+				for (Rule rule : bucket) {
+					if(rule.coveredByRule(instance)){
+						coveredRules.add(rule);
+					}
+				}
+			}
+		}
+
+		// numeric anchors: stabbing query on the interval tree of the attribute
+		for (Map.Entry<Integer, IntervalTree> entry : numericTrees.entrySet()) {
+			double value = instance.value(entry.getKey());
+			if(Utils.isMissingValue(value)){
+				continue;
+			}
+			entry.getValue().stab(value, instance, coveredRules);
+		}
+
+		if(coveredRules.size() > 1){
+			Collections.sort(coveredRules, LIBRARY_ORDER);
+		}
+		return coveredRules;
+	}
+
+	// bucket of a rule term: attribute index and value index for a nominal term, the
+	// attribute index alone for a numeric one
+	static Long termBucket(RuleTerm ruleTerm){
+		return termBucket(ruleTerm.attribute.index(), ruleTerm.attribute_type == RuleTerm.CATEGORICAL_ATTRIBUTE, ruleTerm.value);
+	}
+
+	static Long termBucket(int attributeIndex, boolean nominal, double value){
+		return ((long) attributeIndex << 32) | (nominal ? (int) value : -1) & 0xffffffffL;
+	}
+
+	// nominal terms are preferred as anchor since a hash bucket only holds exact matches
+	static RuleTerm anchorTerm(Rule rule){
+
+		RuleTerm numericAnchor = null;
+
+		for (RuleTerm ruleTerm : rule.listOfRuleTerm) {
+			if(ruleTerm.attribute_type == RuleTerm.CATEGORICAL_ATTRIBUTE){
+				return ruleTerm;
+			}
+			if(numericAnchor == null){
+				numericAnchor = ruleTerm;
+			}
+		}
+		return numericAnchor;
+	}
+
+	// Static interval tree for numeric rule terms in form: lower < value <= upper.
+	// Intervals are kept sorted by lower bound in primitive arrays and laid out as an
+	// implicit balanced binary tree, each node remembering the largest upper bound in its
+	// subtree. Added intervals wait unsorted until the next lookup, which sorts only them
+	// and merges them into the tree. A removed rule leaves a tombstone (null) behind, which
+	// lookups skip, and the tree is compacted once tombstones make up a quarter of it, so
+	// removals never sort.
+	static class IntervalTree{
+
+		// share of tombstones in the tree at which it is compacted on the next lookup
+		static final int COMPACT_RATIO = 4;
+
+		// built intervals sorted by lower bound, null rules are tombstones
+		Rule[] sortedRules = new Rule[0];
+		double[] lowerBounds = new double[0];
+		double[] upperBounds = new double[0];
+		double[] subtreeMaxUpperBounds = new double[0];
+		int noTombstones;
+
+		// intervals added since the tree was built, in the order they were added
+		Rule[] addedRules = new Rule[4];
+		double[] addedLowerBounds = new double[4];
+		double[] addedUpperBounds = new double[4];
+		int noAdded;
+
+		void add(Rule rule, double lowerBound, double upperBound){
+
+			if(noAdded == addedRules.length){
+				addedRules = Arrays.copyOf(addedRules, 2 * noAdded);
+				addedLowerBounds = Arrays.copyOf(addedLowerBounds, 2 * noAdded);
+				addedUpperBounds = Arrays.copyOf(addedUpperBounds, 2 * noAdded);
+			}
+			addedRules[noAdded] = rule;
+			addedLowerBounds[noAdded] = lowerBound;
+			addedUpperBounds[noAdded] = upperBound;
+			noAdded++;
+		}
+
+		// the lower bound of the rule's interval narrows the search down to its equal bounds
+		boolean remove(Rule rule, double lowerBound){
+
+			for (int i = 0; i < noAdded; i++) {
+				if(addedRules[i] == rule){
+					noAdded--;
+					addedRules[i] = addedRules[noAdded];
+					addedLowerBounds[i] = addedLowerBounds[noAdded];
+					addedUpperBounds[i] = addedUpperBounds[noAdded];
+					addedRules[noAdded] = null;
+					return true;
+				}
+			}
+
+			for (int i = firstPosition(lowerBound); i < sortedRules.length && Double.compare(lowerBounds[i], lowerBound) == 0; i++) {
+				if(sortedRules[i] == rule){
+					sortedRules[i] = null;
+					noTombstones++;
+					return true;
+				}
+			}
+			return false;
+		}
+
+		boolean isEmpty(){
+			return noAdded == 0 && noTombstones == sortedRules.length;
+		}
+
+		void stab(double value, Instance instance, List<Rule> coveredRules){
+			build();
+			stab(0, sortedRules.length - 1, value, instance, coveredRules);
+		}
+
+		private void stab(int low, int high, double value, Instance instance, List<Rule> coveredRules){
+
+			while(low <= high){
+				int middle = (low + high) >>> 1;
+
+				// nothing in this subtree reaches the value
+				if(subtreeMaxUpperBounds[middle] < value){
+					return;
+				}
+
+				stab(low, middle - 1, value, instance, coveredRules);
+
+				// all intervals on the right start at or after this one
+				if(lowerBounds[middle] >= value){
+					return;
+				}
+
+				Rule rule = sortedRules[middle];
+				if(rule != null && upperBounds[middle] >= value && rule.coveredByRule(instance)){
+					coveredRules.add(rule);
+				}
+				low = middle + 1;
+			}
+		}
+
+		// rules with a lower bound not greater than lowerBound and an upper bound not smaller
+		// than upperBound, i.e. intervals containing (lowerBound, upperBound]
+		void containing(double lowerBound, double upperBound, List<Rule> containingRules){
+			build();
+			containing(0, sortedRules.length - 1, lowerBound, upperBound, containingRules);
+		}
+
+		private void containing(int low, int high, double lowerBound, double upperBound, List<Rule> containingRules){
+
+			while(low <= high){
+				int middle = (low + high) >>> 1;
+
+				// nothing in this subtree reaches the upper bound
+				if(subtreeMaxUpperBounds[middle] < upperBound){
+					return;
+				}
+
+				containing(low, middle - 1, lowerBound, upperBound, containingRules);
+
+				// all intervals on the right start at or after this one
+				if(lowerBounds[middle] > lowerBound){
+					return;
+				}
+
+				if(sortedRules[middle] != null && upperBounds[middle] >= upperBound){
+					containingRules.add(sortedRules[middle]);
+				}
+				low = middle + 1;
+			}
+		}
+
+		// first position of the tree with a lower bound not smaller than the given one
+		private int firstPosition(double lowerBound){
+
+			int low = 0;
+			int high = sortedRules.length;
+			while(low < high){
+				int middle = (low + high) >>> 1;
+				if(Double.compare(lowerBounds[middle], lowerBound) < 0){
+					low = middle + 1;
+				}else{
+					high = middle;
+				}
+			}
+			return low;
+		}
+
+		// merge the added intervals into the tree and drop its tombstones, if either is due
+		private void build(){
+
+			if(noAdded == 0 && noTombstones * COMPACT_RATIO < sortedRules.length){
+				return;
+			}
+
+			int[] addedOrder = sortedOrder(addedLowerBounds, noAdded);
+			int n = sortedRules.length - noTombstones + noAdded;
+			Rule[] mergedRules = new Rule[n];
+			double[] mergedLowerBounds = new double[n];
+			double[] mergedUpperBounds = new double[n];
+
+			// built intervals go first among equal lower bounds
+			int built = 0;
+			int added = 0;
+			for (int i = 0; i < n; i++) {
+				while(built < sortedRules.length && sortedRules[built] == null){
+					built++;
+				}
+				if(built < sortedRules.length
+						&& (added == noAdded || Double.compare(lowerBounds[built], addedLowerBounds[addedOrder[added]]) <= 0)){
+					mergedRules[i] = sortedRules[built];
+					mergedLowerBounds[i] = lowerBounds[built];
+					mergedUpperBounds[i] = upperBounds[built];
+					built++;
+				}else{
+					int position = addedOrder[added++];
+					mergedRules[i] = addedRules[position];
+					mergedLowerBounds[i] = addedLowerBounds[position];
+					mergedUpperBounds[i] = addedUpperBounds[position];
+				}
+			}
+
+			sortedRules = mergedRules;
+			lowerBounds = mergedLowerBounds;
+			upperBounds = mergedUpperBounds;
+			subtreeMaxUpperBounds = new double[n];
+			noTombstones = 0;
+			Arrays.fill(addedRules, 0, noAdded, null);
+			noAdded = 0;
+
+			buildMaxUpperBounds(0, n - 1);
+		}
+
+		private double buildMaxUpperBounds(int low, int high){
+
+			if(low > high){
+				return Double.NEGATIVE_INFINITY;
+			}
+			int middle = (low + high) >>> 1;
+			double maxUpperBound = Math.max(upperBounds[middle],
+					Math.max(buildMaxUpperBounds(low, middle - 1), buildMaxUpperBounds(middle + 1, high)));
+			subtreeMaxUpperBounds[middle] = maxUpperBound;
+			return maxUpperBound;
+		}
+
+		// positions 0 up to n (exclusive) in ascending order of their keys, equal keys keep
+		// their order (bottom-up merge sort)
+		static int[] sortedOrder(double[] keys, int n){
+
+			int[] order = new int[n];
+			int[] buffer = new int[n];
+			for (int i = 0; i < n; i++) {
+				order[i] = i;
+			}
+
+			for (int width = 1; width < n; width *= 2) {
+				for (int low = 0; low < n; low += 2 * width) {
+					int middle = Math.min(low + width, n);
+					int high = Math.min(low + 2 * width, n);
+					int left = low;
+					int right = middle;
+					for (int i = low; i < high; i++) {
+						if(left < middle && (right == high || Double.compare(keys[order[left]], keys[order[right]]) <= 0)){
+							buffer[i] = order[left++];
+						}else{
+							buffer[i] = order[right++];
+						}
+					}
+				}
+				int[] sorted = buffer;
+				buffer = order;
+				order = sorted;
+			}
+			return order;
+		}
+	}
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright (C) 2017 Thien Le, Frederic Stahl - University of Reading, UK
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package moa.classifiers.rules;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import moa.classifiers.rules.GeRules.Rule;
+import moa.classifiers.rules.GeRules.RuleTerm;
+
+// Canonical form of a rule: its class label and its rule terms ordered by attribute index
+// and bounds, so rules with the same terms in a different order are equal and hash alike.
+// A nominal term is held as a bound pair with the value index as both bounds.
+public final class RuleKey {
+
+	final int classLabel;
+
+	// per rule term, in canonical order
+	final int[] attributeIndices;
+	final boolean[] nominalTerms;
+	final double[] lowerBounds;
+	final double[] upperBounds;
+
+	final int hashCode;
+
+	public RuleKey(Rule rule){
+
+		classLabel = (int) rule.classification;
+
+		RuleTerm[] ruleTerms = rule.listOfRuleTerm.toArray(new RuleTerm[rule.listOfRuleTerm.size()]);
+		Arrays.sort(ruleTerms, CANONICAL_ORDER);
+
+		attributeIndices = new int[ruleTerms.length];
+		nominalTerms = new boolean[ruleTerms.length];
+		lowerBounds = new double[ruleTerms.length];
+		upperBounds = new double[ruleTerms.length];
+		for (int i = 0; i < ruleTerms.length; i++) {
+			attributeIndices[i] = ruleTerms[i].attribute.index();
+			nominalTerms[i] = ruleTerms[i].attribute_type == RuleTerm.CATEGORICAL_ATTRIBUTE;
+			lowerBounds[i] = lowerBound(ruleTerms[i]);
+			upperBounds[i] = upperBound(ruleTerms[i]);
+		}
+
+		int hash = classLabel;
+		hash = 31 * hash + Arrays.hashCode(attributeIndices);
+		hash = 31 * hash + Arrays.hashCode(lowerBounds);
+		hash = 31 * hash + Arrays.hashCode(upperBounds);
+		hashCode = hash;
+	}
+
+	// order of rule terms in the canonical form
+	static final Comparator<RuleTerm> CANONICAL_ORDER = new Comparator<RuleTerm>() {
+		@Override
+		public int compare(RuleTerm termA, RuleTerm termB) {
+			int order = Integer.compare(termA.attribute.index(), termB.attribute.index());
+			if(order == 0){
+				order = Double.compare(lowerBound(termA), lowerBound(termB));
+			}
+			if(order == 0){
+				order = Double.compare(upperBound(termA), upperBound(termB));
+			}
+			return order;
+		}
+	};
+
+	private static double lowerBound(RuleTerm ruleTerm){
+		return ruleTerm.attribute_type == RuleTerm.CATEGORICAL_ATTRIBUTE ? ruleTerm.value : ruleTerm.numericLowerBound;
+	}
+
+	private static double upperBound(RuleTerm ruleTerm){
+		return ruleTerm.attribute_type == RuleTerm.CATEGORICAL_ATTRIBUTE ? ruleTerm.value : ruleTerm.numericUpperBound;
+	}
+
+	public int noOfTerms(){
+		return attributeIndices.length;
+	}
+
+	// true if the rule of this key covers every instance the rule of the other key covers
+	// and predicts the same class, i.e. each term of this key is implied by a term of the other
+	public boolean subsumes(RuleKey other){
+
+		if(classLabel != other.classLabel || noOfTerms() > other.noOfTerms()){
+			return false;
+		}
+
+		for (int i = 0; i < attributeIndices.length; i++) {
+			if(!impliedBy(i, other)){
+				return false;
+			}
+		}
+		return true;
+	}
+
+	// whether a term of the other key restricts the attribute of term i at least as much
+	private boolean impliedBy(int i, RuleKey other){
+
+		for (int j = 0; j < other.attributeIndices.length; j++) {
+
+			if(other.attributeIndices[j] != attributeIndices[i]){
+				continue;
+			}
+			if(nominalTerms[i]){
+				if(other.lowerBounds[j] == lowerBounds[i]){
+					return true;
+				}
+			}
+			// numeric terms cover lower bound < value <= upper bound
+			else if(other.lowerBounds[j] >= lowerBounds[i] && other.upperBounds[j] <= upperBounds[i]){
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public int hashCode() {
+		return hashCode;
+	}
+
+	@Override
+	public boolean equals(Object object) {
+
+		if(this == object){
+			return true;
+		}
+		if(!(object instanceof RuleKey)){
+			return false;
+		}
+		RuleKey other = (RuleKey) object;
+		return hashCode == other.hashCode
+				&& classLabel == other.classLabel
+				&& Arrays.equals(attributeIndices, other.attributeIndices)
+				&& Arrays.equals(lowerBounds, other.lowerBounds)
+				&& Arrays.equals(upperBounds, other.upperBounds);
+	}
+}
@@ -0,0 +1,285 @@
+/*
+ * Copyright (C) 2017 Thien Le, Frederic Stahl - University of Reading, UK
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package moa.classifiers.rules;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import moa.classifiers.rules.GeRules.Rule;
+import moa.classifiers.rules.GeRules.RuleTerm;
+import weka.core.Attribute;
+import weka.core.Instances;
+
+// Compact binary format of a rules library. All records have a fixed width, so the
+// file can be memory-mapped and evaluated in place (see MappedRuleSet), or read back
+// into the rules library of a GeRules model to carry on learning. Big-endian layout:
+//
+//   header  MAGIC, FORMAT_VERSION, numAttributes, classIndex, numClasses,
+//           noRules, noTerms, seenInstances                    (8 ints)
+//   rules   classLabel, age, noOfCovered, noOfCorrectlyCovered,
+//           instancesCoveredWhenRuleCreated, lastCoveredAt,
+//           firstTerm, noTerms                                 (8 ints per rule)
+//   terms   attributeIndex, termType, lowerBound, upperBound   (2 ints, 2 doubles per term)
+//
+// Nominal terms hold the value index as lower bound, numeric terms are in form:
+// lower < value <= upper. Terms of a rule are stored one after the other.
+public class RuleModelFile {
+
+	public static final int MAGIC = 0x4745524C; // "GERL"
+	public static final int FORMAT_VERSION = 1;
+
+	static final int HEADER_BYTES = 8 * 4;
+	static final int RULE_RECORD_BYTES = 8 * 4;
+	static final int TERM_RECORD_BYTES = 2 * 4 + 2 * 8;
+
+	// header fields
+	static final int NUM_ATTRIBUTES_OFFSET = 8;
+	static final int CLASS_INDEX_OFFSET = 12;
+	static final int NUM_CLASSES_OFFSET = 16;
+	static final int NO_RULES_OFFSET = 20;
+	static final int NO_TERMS_OFFSET = 24;
+	static final int SEEN_INSTANCES_OFFSET = 28;
+
+	// rule record fields
+	static final int CLASS_LABEL_OFFSET = 0;
+	static final int AGE_OFFSET = 4;
+	static final int NO_OF_COVERED_OFFSET = 8;
+	static final int NO_OF_CORRECTLY_COVERED_OFFSET = 12;
+	static final int COVERED_WHEN_CREATED_OFFSET = 16;
+	static final int LAST_COVERED_AT_OFFSET = 20;
+	static final int FIRST_TERM_OFFSET = 24;
+	static final int RULE_NO_TERMS_OFFSET = 28;
+
+	// term record fields
+	static final int ATTRIBUTE_INDEX_OFFSET = 0;
+	static final int TERM_TYPE_OFFSET = 4;
+	static final int LOWER_BOUND_OFFSET = 8;
+	static final int UPPER_BOUND_OFFSET = 16;
+
+	private RuleModelFile(){
+	}
+
+	// write the rules library of the model, the header describes the instances it was learnt from
+	public static void write(GeRules geRules, Instances header, File file) throws IOException {
+
+		List<Rule> rules = geRules.rulesList;
+
+		int noTerms = 0;
+		for (Rule rule : rules) {
+			noTerms += rule.listOfRuleTerm.size();
+		}
+
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+
+			out.writeInt(MAGIC);
+			out.writeInt(FORMAT_VERSION);
+			out.writeInt(header.numAttributes());
+			out.writeInt(header.classIndex());
+			out.writeInt(header.numClasses());
+			out.writeInt(rules.size());
+			out.writeInt(noTerms);
+			out.writeInt(geRules.seenInstances());
+
+			int firstTerm = 0;
+			for (Rule rule : rules) {
+				out.writeInt((int) rule.classification);
+				out.writeInt(rule.age);
+				out.writeInt(rule.noOfCovered.intValue());
+				out.writeInt(rule.noOfCorrectlyCovered.intValue());
+				out.writeInt(rule.instancesCoveredWhenRuleCreated);
+				out.writeInt(rule.lastCoveredAt);
+				out.writeInt(firstTerm);
+				out.writeInt(rule.listOfRuleTerm.size());
+				firstTerm += rule.listOfRuleTerm.size();
+			}
+
+			for (Rule rule : rules) {
+				for (RuleTerm ruleTerm : rule.listOfRuleTerm) {
+					out.writeInt(ruleTerm.attribute.index());
+					out.writeInt(ruleTerm.attribute_type);
+					if(ruleTerm.attribute_type == RuleTerm.CATEGORICAL_ATTRIBUTE){
+						out.writeDouble(ruleTerm.value);
+						out.writeDouble(ruleTerm.value);
+					}else{
+						out.writeDouble(ruleTerm.numericLowerBound);
+						out.writeDouble(ruleTerm.numericUpperBound);
+					}
+				}
+			}
+		}
+	}
+
+	// read the rules of a file back into Rule objects of the model and add them to its
+	// rules library, the header has to match the one the rules were written with
+	public static List<Rule> read(GeRules geRules, Instances header, File file) throws IOException {
+
+		ByteBuffer buffer = map(file);
+		checkHeader(buffer, header);
+
+		int noRules = buffer.getInt(NO_RULES_OFFSET);
+		int termsOffset = HEADER_BYTES + noRules * RULE_RECORD_BYTES;
+		Attribute classAttribute = header.classAttribute();
+
+		List<Rule> rules = new ArrayList<>(noRules);
+		for (int i = 0; i < noRules; i++) {
+
+			int ruleOffset = HEADER_BYTES + i * RULE_RECORD_BYTES;
+			Rule rule = geRules.new Rule(
+					header.numClasses(), 
+					buffer.getInt(ruleOffset + CLASS_LABEL_OFFSET), 
+					classAttribute, 
+					buffer.getInt(ruleOffset + AGE_OFFSET));
+			rule.noOfCovered.reset();
+			rule.noOfCovered.add(buffer.getInt(ruleOffset + NO_OF_COVERED_OFFSET));
+			rule.noOfCorrectlyCovered.reset();
+			rule.noOfCorrectlyCovered.add(buffer.getInt(ruleOffset + NO_OF_CORRECTLY_COVERED_OFFSET));
+			rule.instancesCoveredWhenRuleCreated = buffer.getInt(ruleOffset + COVERED_WHEN_CREATED_OFFSET);
+			rule.lastCoveredAt = buffer.getInt(ruleOffset + LAST_COVERED_AT_OFFSET);
+
+			int firstTerm = buffer.getInt(ruleOffset + FIRST_TERM_OFFSET);
+			int noTerms = buffer.getInt(ruleOffset + RULE_NO_TERMS_OFFSET);
+			for (int term = firstTerm; term < firstTerm + noTerms; term++) {
+
+				int termOffset = termsOffset + term * TERM_RECORD_BYTES;
+				Attribute attribute = header.attribute(buffer.getInt(termOffset + ATTRIBUTE_INDEX_OFFSET));
+				double lowerBound = buffer.getDouble(termOffset + LOWER_BOUND_OFFSET);
+
+				if(buffer.getInt(termOffset + TERM_TYPE_OFFSET) == RuleTerm.CATEGORICAL_ATTRIBUTE){
+					rule.addRuleTerm(geRules.new RuleTerm(attribute, lowerBound));
+				}else{
+					rule.addRuleTerm(geRules.new RuleTerm(attribute, lowerBound, buffer.getDouble(termOffset + UPPER_BOUND_OFFSET)));
+				}
+			}
+			rules.add(rule);
+		}
+
+		// ages and coverage of the rules are relative to the instances seen when they were written
+		geRules.totalSeenInstances = Math.max(geRules.totalSeenInstances, buffer.getInt(SEEN_INSTANCES_OFFSET));
+		geRules.addRulesToLibrary(rules);
+		return rules;
+	}
+
+	// read-only mapping of a rule model file with its header and records checked
+	static MappedByteBuffer map(File file) throws IOException {
+
+		try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+				FileChannel channel = randomAccessFile.getChannel()) {
+
+			if(channel.size() < HEADER_BYTES){
+				throw new IOException("Not a rule model file: " + file);
+			}
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+			if(buffer.getInt(0) != MAGIC){
+				throw new IOException("Not a rule model file: " + file);
+			}
+			if(buffer.getInt(4) != FORMAT_VERSION){
+				throw new IOException("Unsupported rule model format version " + buffer.getInt(4) + " in " + file);
+			}
+
+			long expectedSize = HEADER_BYTES 
+					+ (long) buffer.getInt(NO_RULES_OFFSET) * RULE_RECORD_BYTES 
+					+ (long) buffer.getInt(NO_TERMS_OFFSET) * TERM_RECORD_BYTES;
+			if(buffer.getInt(NO_RULES_OFFSET) < 0 || buffer.getInt(NO_TERMS_OFFSET) < 0 || channel.size() != expectedSize){
+				throw new IOException("Truncated rule model file: " + file);
+			}
+			checkRecords(buffer, file);
+			return buffer;
+		}
+	}
+
+	// class labels, term ranges, attribute indices and term types within the counts of the
+	// file header, so rules can be evaluated without bounds checks
+	private static void checkRecords(ByteBuffer buffer, File file) throws IOException {
+
+		int numAttributes = buffer.getInt(NUM_ATTRIBUTES_OFFSET);
+		int classIndex = buffer.getInt(CLASS_INDEX_OFFSET);
+		int numClasses = buffer.getInt(NUM_CLASSES_OFFSET);
+		int noRules = buffer.getInt(NO_RULES_OFFSET);
+		int noTerms = buffer.getInt(NO_TERMS_OFFSET);
+		int termsOffset = HEADER_BYTES + noRules * RULE_RECORD_BYTES;
+
+		for (int i = 0; i < noRules; i++) {
+
+			int ruleOffset = HEADER_BYTES + i * RULE_RECORD_BYTES;
+			int classLabel = buffer.getInt(ruleOffset + CLASS_LABEL_OFFSET);
+			if(classLabel < 0 || classLabel >= numClasses){
+				throw new IOException("Rule " + i + " has class label " + classLabel + ", expected fewer than " + numClasses + " in " + file);
+			}
+
+			int firstTerm = buffer.getInt(ruleOffset + FIRST_TERM_OFFSET);
+			int ruleNoTerms = buffer.getInt(ruleOffset + RULE_NO_TERMS_OFFSET);
+			if(firstTerm < 0 || ruleNoTerms < 0 || (long) firstTerm + ruleNoTerms > noTerms){
+				throw new IOException("Rule " + i + " has terms " + firstTerm + " to " + ((long) firstTerm + ruleNoTerms) 
+						+ ", expected at most " + noTerms + " in " + file);
+			}
+		}
+
+		for (int term = 0; term < noTerms; term++) {
+
+			int termOffset = termsOffset + term * TERM_RECORD_BYTES;
+			int attributeIndex = buffer.getInt(termOffset + ATTRIBUTE_INDEX_OFFSET);
+			if(attributeIndex < 0 || attributeIndex >= numAttributes || attributeIndex == classIndex){
+				throw new IOException("Term " + term + " tests attribute " + attributeIndex + " of " + numAttributes 
+						+ " with class index " + classIndex + " in " + file);
+			}
+			int termType = buffer.getInt(termOffset + TERM_TYPE_OFFSET);
+			if(termType != RuleTerm.CATEGORICAL_ATTRIBUTE && termType != RuleTerm.NUMERIC_ATTRIBUTE){
+				throw new IOException("Term " + term + " has unknown term type " + termType + " in " + file);
+			}
+		}
+	}
+
+	// the header has to have the counts of the file header, and the attributes of the terms
+	// have to be of the type of the terms with the value indices of nominal terms
+	static void checkHeader(ByteBuffer buffer, Instances header) throws IOException {
+
+		if(buffer.getInt(NUM_ATTRIBUTES_OFFSET) != header.numAttributes()
+				|| buffer.getInt(CLASS_INDEX_OFFSET) != header.classIndex()
+				|| buffer.getInt(NUM_CLASSES_OFFSET) != header.numClasses()){
+			throw new IOException("Rule model was written for instances with " 
+					+ buffer.getInt(NUM_ATTRIBUTES_OFFSET) + " attributes and " 
+					+ buffer.getInt(NUM_CLASSES_OFFSET) + " class labels");
+		}
+
+		int noTerms = buffer.getInt(NO_TERMS_OFFSET);
+		int termsOffset = HEADER_BYTES + buffer.getInt(NO_RULES_OFFSET) * RULE_RECORD_BYTES;
+		for (int term = 0; term < noTerms; term++) {
+
+			int termOffset = termsOffset + term * TERM_RECORD_BYTES;
+			Attribute attribute = header.attribute(buffer.getInt(termOffset + ATTRIBUTE_INDEX_OFFSET));
+
+			if(buffer.getInt(termOffset + TERM_TYPE_OFFSET) == RuleTerm.CATEGORICAL_ATTRIBUTE){
+				double valueIndex = buffer.getDouble(termOffset + LOWER_BOUND_OFFSET);
+				if(!attribute.isNominal() || !(valueIndex >= 0 && valueIndex < attribute.numValues()) || valueIndex != Math.rint(valueIndex)){
+					throw new IOException("Term " + term + " tests value " + valueIndex + " of attribute " + attribute.name() 
+							+ ", which is not a value index of a nominal attribute");
+				}
+			}else if(!attribute.isNumeric()){
+				throw new IOException("Term " + term + " has numeric bounds on nominal attribute " + attribute.name());
+			}
+		}
+	}
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright (C) 2017 Thien Le, Frederic Stahl - University of Reading, UK
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package moa.classifiers.rules;
+
+import java.util.Arrays;
+
+// Working arrays of one thread for training and prediction without allocating per instance.
+// Arrays only grow, so once they fit the rules library and the number of classes the same
+// arrays are handed out again and again. An array is only valid until the next call for
+// an array of the same kind on the same thread.
+public class ScratchBuffers {
+
+	// bitset of rules failing an instance
+	long[] failedRules = new long[0];
+
+	// positions of covering rules in a compiled rule set
+	int[] coveredRules = new int[0];
+
+	// votes of one prediction
+	double[] votes = new double[0];
+
+	public long[] failedRules(CompiledRuleSet ruleSet){
+
+		if(failedRules.length < ruleSet.failedRulesLength()){
+			failedRules = new long[ruleSet.failedRulesLength()];
+		}
+		return failedRules;
+	}
+
+	public int[] coveredRules(CompiledRuleSet ruleSet){
+
+		if(coveredRules.length < ruleSet.numRules()){
+			coveredRules = new int[ruleSet.numRules()];
+		}
+		return coveredRules;
+	}
+
+	// zeroed votes array of exactly numClasses entries
+	public double[] votes(int numClasses){
+
+		if(votes.length != numClasses){
+			votes = new double[numClasses];
+		}else{
+			Arrays.fill(votes, 0.0d);
+		}
+		return votes;
+	}
+}
@@ -0,0 +1,256 @@
+/*
+ * Copyright (C) 2017 Thien Le, Frederic Stahl - University of Reading, UK
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package moa.classifiers.rules;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import weka.core.Instance;
+
+// Rows of a window in compressed sparse row (CSR) form: only the non-zero values of a row
+// are kept as (attribute index, value) entries in ascending attribute index order, every
+// attribute without an entry holds 0. Missing values are kept as entries holding NaN.
+// A row that is overwritten gets its new entries appended, the old ones stay behind until
+// the entry arrays run full and are rebuilt from the rows in use.
+// The same entries in compressed sparse column (CSC) form are built on first use and
+// kept until the rows change, so induction can go through the entries of one attribute.
+public class SparseRows implements Serializable {
+
+	int numAttributes;
+
+	// entries of row i are at positions rowStarts[i] up to rowStarts[i] + rowLengths[i] (exclusive)
+	int[] rowStarts;
+	int[] rowLengths;
+
+	int[] entryIndices;
+	double[] entryValues;
+
+	// positions of the entry arrays in use, and the entries of rows in use among them
+	int noEntries;
+	int liveEntries;
+
+	// entries by attribute, null until asked for after a change
+	transient Columns columns;
+
+	public SparseRows(int numAttributesIn, int capacity){
+		numAttributes = numAttributesIn;
+		rowStarts = new int[capacity];
+		rowLengths = new int[capacity];
+		entryIndices = new int[Math.max(capacity, 16)];
+		entryValues = new double[entryIndices.length];
+	}
+
+	public void ensureRows(int capacity){
+
+		if(capacity > rowStarts.length){
+			rowStarts = Arrays.copyOf(rowStarts, capacity);
+			rowLengths = Arrays.copyOf(rowLengths, capacity);
+		}
+	}
+
+	// non-zero values of the instance without the class attribute
+	public void setRow(int row, Instance instance){
+
+		releaseRow(row);
+		ensureEntries(instance.numValues());
+
+		int classIndex = instance.classIndex();
+		int start = noEntries;
+		for (int i = 0; i < instance.numValues(); i++) {
+			int index = instance.index(i);
+			double value = instance.valueSparse(i);
+			if(index == classIndex || value == 0.0d){
+				continue;
+			}
+			entryIndices[noEntries] = index;
+			entryValues[noEntries] = value;
+			noEntries++;
+		}
+		useRow(row, start);
+	}
+
+	// entries of a row of other sparse rows
+	public void setRow(int row, SparseRows source, int sourceRow){
+
+		releaseRow(row);
+		int length = source.rowLengths[sourceRow];
+		ensureEntries(length);
+
+		System.arraycopy(source.entryIndices, source.rowStarts[sourceRow], entryIndices, noEntries, length);
+		System.arraycopy(source.entryValues, source.rowStarts[sourceRow], entryValues, noEntries, length);
+		int start = noEntries;
+		noEntries += length;
+		useRow(row, start);
+	}
+
+	private void releaseRow(int row){
+		liveEntries -= rowLengths[row];
+		rowLengths[row] = 0;
+	}
+
+	private void useRow(int row, int start){
+		rowStarts[row] = start;
+		rowLengths[row] = noEntries - start;
+		liveEntries += rowLengths[row];
+		columns = null;
+	}
+
+	// room for more entries, a full entry array is rebuilt without the entries of overwritten
+	// rows and grown so at least as many entries as are in use fit in after the rebuild
+	private void ensureEntries(int required){
+
+		if(noEntries + required <= entryIndices.length){
+			return;
+		}
+
+		int newLength = Math.max(entryIndices.length, 2 * (liveEntries + required));
+		int[] indices = new int[newLength];
+		double[] values = new double[newLength];
+
+		int position = 0;
+		for (int row = 0; row < rowStarts.length; row++) {
+			int length = rowLengths[row];
+			if(length == 0){
+				continue;
+			}
+			System.arraycopy(entryIndices, rowStarts[row], indices, position, length);
+			System.arraycopy(entryValues, rowStarts[row], values, position, length);
+			rowStarts[row] = position;
+			position += length;
+		}
+
+		entryIndices = indices;
+		entryValues = values;
+		noEntries = position;
+	}
+
+	public void clear(){
+		Arrays.fill(rowLengths, 0);
+		noEntries = 0;
+		liveEntries = 0;
+		columns = null;
+	}
+
+	public int rowStart(int row){
+		return rowStarts[row];
+	}
+
+	public int rowEnd(int row){
+		return rowStarts[row] + rowLengths[row];
+	}
+
+	public int index(int entry){
+		return entryIndices[entry];
+	}
+
+	public double value(int entry){
+		return entryValues[entry];
+	}
+
+	// position of the first entry of the row with an attribute index not smaller than the given one
+	public int firstEntry(int row, int attributeIndex){
+
+		int low = rowStarts[row];
+		int high = low + rowLengths[row];
+		while(low < high){
+			int middle = (low + high) >>> 1;
+			if(entryIndices[middle] < attributeIndex){
+				low = middle + 1;
+			}else{
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+	// value of an attribute in a row, 0 if the row has no entry for it
+	public double value(int row, int attributeIndex){
+
+		int entry = firstEntry(row, attributeIndex);
+		if(entry < rowEnd(row) && entryIndices[entry] == attributeIndex){
+			return entryValues[entry];
+		}
+		return 0.0d;
+	}
+
+	// entries of the first noRows rows by attribute, built on first use after a change
+	public synchronized Columns columns(int noRows){
+
+		if(columns == null){
+			columns = new Columns(this, noRows);
+		}
+		return columns;
+	}
+
+	public long estimatedByteSize(){
+
+		long byteSize = 8L * rowStarts.length + 12L * entryIndices.length;
+		Columns builtColumns = columns;
+		if(builtColumns != null){
+			byteSize += 4L * builtColumns.starts.length + 12L * builtColumns.rows.length;
+		}
+		return byteSize;
+	}
+
+	// entries in CSC form: entries of attribute index i are at positions starts[i] up to
+	// starts[i + 1] (exclusive), in ascending row order
+	public static class Columns {
+
+		final int[] starts;
+		final int[] rows;
+		final double[] values;
+
+		Columns(SparseRows sparseRows, int noRows){
+
+			starts = new int[sparseRows.numAttributes + 1];
+			for (int row = 0; row < noRows; row++) {
+				for (int entry = sparseRows.rowStart(row); entry < sparseRows.rowEnd(row); entry++) {
+					starts[sparseRows.entryIndices[entry] + 1]++;
+				}
+			}
+			for (int i = 0; i < sparseRows.numAttributes; i++) {
+				starts[i + 1] += starts[i];
+			}
+
+			rows = new int[starts[sparseRows.numAttributes]];
+			values = new double[rows.length];
+			int[] nextEntry = Arrays.copyOf(starts, sparseRows.numAttributes);
+			for (int row = 0; row < noRows; row++) {
+				for (int entry = sparseRows.rowStart(row); entry < sparseRows.rowEnd(row); entry++) {
+					int position = nextEntry[sparseRows.entryIndices[entry]]++;
+					rows[position] = row;
+					values[position] = sparseRows.entryValues[entry];
+				}
+			}
+		}
+
+		public int start(int attributeIndex){
+			return starts[attributeIndex];
+		}
+
+		public int end(int attributeIndex){
+			return starts[attributeIndex + 1];
+		}
+
+		public int row(int entry){
+			return rows[entry];
+		}
+
+		public double value(int entry){
+			return values[entry];
+		}
+	}
+}
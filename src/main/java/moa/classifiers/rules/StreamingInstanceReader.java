@@ -0,0 +1,603 @@
+/*
+ * Copyright (C) 2017 Thien Le, Frederic Stahl - University of Reading, UK
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package moa.classifiers.rules;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.StringReader;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import weka.core.Attribute;
+import weka.core.DenseInstance;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.Utils;
+
+// Reads ARFF or CSV files row by row from memory-mapped chunks of the file, so files of
+// any size are read in constant memory. Every row is parsed into the same instance
+// object, which is returned again by each call to next() with the values of the next
+// row: callers must copy an instance they want to keep (GeRules copies what it keeps
+// into its window buffers). Nominal values are looked up from the raw bytes and plain
+// decimal numbers are parsed without creating strings.
+// Nominal and numeric attributes are supported, sparse ARFF rows are filled with zeros.
+// Instance weights in braces after the values of a row, as in "1,a,{0.5}", are read into
+// the weight of the instance, rows without one have weight 1.
+// A chunk is unmapped as soon as the reader moves past it, where the JVM allows it, rather
+// than when the buffer happens to be garbage collected.
+public class StreamingInstanceReader implements Closeable {
+
+	// size of the part of the file mapped at a time
+	static final long MAP_CHUNK_BYTES = 1L << 26;
+
+	static final int END_OF_FILE = -1;
+
+	// sun.misc.Unsafe.invokeCleaner, null if the JVM has none (before Java 9)
+	private static final Object UNSAFE;
+	private static final Method INVOKE_CLEANER;
+
+	static {
+		Object unsafe = null;
+		Method invokeCleaner = null;
+		try {
+			Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+			invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+			Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+			theUnsafe.setAccessible(true);
+			unsafe = theUnsafe.get(null);
+		} catch (Exception | LinkageError e) {
+			invokeCleaner = null;
+		}
+		UNSAFE = unsafe;
+		INVOKE_CLEANER = invokeCleaner;
+	}
+
+	// powers of ten which are exact doubles
+	private static final double[] POWERS_OF_TEN = {
+		1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+		1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+
+	final RandomAccessFile randomAccessFile;
+	final FileChannel channel;
+	final long fileSize;
+	final long mapChunkBytes;
+
+	// mapped chunk, null once the file is read, and the file offsets of its start and of the next byte to read
+	MappedByteBuffer chunk;
+	long chunkStart;
+	long position;
+
+	final boolean arff;
+	final Instances header;
+	final ReusableInstance instance;
+	final double[] values;
+
+	// per attribute index, null for numeric attributes
+	final NominalValues[] nominalValues;
+
+	// bytes of the value being parsed
+	byte[] token = new byte[64];
+	int tokenLength;
+	boolean tokenQuoted;
+
+	long rowsRead;
+	long chunksMapped;
+
+	private StreamingInstanceReader(File file, boolean arffIn, Instances headerIn, long mapChunkBytesIn) throws IOException {
+
+		randomAccessFile = new RandomAccessFile(file, "r");
+		channel = randomAccessFile.getChannel();
+		fileSize = channel.size();
+		mapChunkBytes = mapChunkBytesIn;
+		mapChunk(0);
+
+		arff = arffIn;
+		header = headerIn != null ? headerIn : readArffHeader();
+		if(header.classIndex() < 0){
+			header.setClassIndex(header.numAttributes() - 1);
+		}
+
+		nominalValues = new NominalValues[header.numAttributes()];
+		for (int i = 0; i < header.numAttributes(); i++) {
+			Attribute attribute = header.attribute(i);
+			if(attribute.isNominal()){
+				nominalValues[i] = new NominalValues(attribute);
+			}else if(!attribute.isNumeric() || attribute.isDate()){
+				close();
+				throw new IOException("Attribute " + attribute.name() + " is neither nominal nor numeric");
+			}
+		}
+
+		instance = new ReusableInstance(header.numAttributes());
+		instance.setDataset(header);
+		values = instance.values();
+	}
+
+	// reader of an ARFF file, the class attribute is the last one unless set in the header
+	public static StreamingInstanceReader arff(File file) throws IOException {
+		return arff(file, MAP_CHUNK_BYTES);
+	}
+
+	static StreamingInstanceReader arff(File file, long mapChunkBytes) throws IOException {
+		return new StreamingInstanceReader(file, true, null, mapChunkBytes);
+	}
+
+	// reader of a CSV file with the columns of the given header, a first row of column names is skipped if told
+	public static StreamingInstanceReader csv(File file, Instances header, boolean skipHeaderRow) throws IOException {
+
+		StreamingInstanceReader reader = new StreamingInstanceReader(file, false, new Instances(header, 0), MAP_CHUNK_BYTES);
+		if(skipHeaderRow){
+			reader.skipLine();
+		}
+		return reader;
+	}
+
+	// header of the instances, the dataset of the returned instance
+	public Instances header(){
+		return header;
+	}
+
+	public long rowsRead(){
+		return rowsRead;
+	}
+
+	// the instance with the values of the next row, null at the end of the file
+	public Instance next() throws IOException {
+
+		int b = skipToRow();
+		if(b == END_OF_FILE){
+			return null;
+		}
+
+		rowsRead++;
+		if(b == '{'){
+			readSparseRow();
+		}else{
+			unread();
+			readDenseRow();
+		}
+		return instance;
+	}
+
+	@Override
+	public void close() throws IOException {
+		releaseChunk();
+		channel.close();
+		randomAccessFile.close();
+	}
+
+	private void readDenseRow() throws IOException {
+
+		for (int i = 0; i < values.length; i++) {
+
+			int end = readToken(false);
+			values[i] = parseValue(i);
+
+			if(i < values.length - 1 && (end == '\n' || end == END_OF_FILE)){
+				throw new IOException("Row " + rowsRead + " has " + (i + 1) + " values, expected " + values.length);
+			}
+			if(i == values.length - 1){
+				readWeight(end);
+			}
+		}
+	}
+
+	// pairs of attribute index and value in braces, attributes not listed are 0
+	private void readSparseRow() throws IOException {
+
+		Arrays.fill(values, 0.0d);
+
+		while(true){
+
+			int b = read();
+			while(b == ' ' || b == '\t'){
+				b = read();
+			}
+			if(b == '}'){
+				break;
+			}
+
+			int attributeIndex = 0;
+			boolean anyDigit = false;
+			while(b >= '0' && b <= '9'){
+				attributeIndex = attributeIndex * 10 + (b - '0');
+				anyDigit = true;
+				b = read();
+			}
+			if(!anyDigit || attributeIndex >= values.length || (b != ' ' && b != '\t')){
+				throw new IOException("Malformed sparse row " + rowsRead);
+			}
+
+			int end = readToken(true);
+			values[attributeIndex] = parseValue(attributeIndex);
+
+			if(end == '}'){
+				break;
+			}
+			if(end != ','){
+				throw new IOException("Malformed sparse row " + rowsRead);
+			}
+		}
+		readWeight(read());
+	}
+
+	// the weight in braces after the values of a row, 1 if there is none, b is the byte after the values;
+	// anything else up to the end of the line is ignored
+	private void readWeight(int b) throws IOException {
+
+		double weight = 1.0d;
+		while(b == ' ' || b == '\t' || b == ','){
+			b = read();
+		}
+		if(arff && b == '{'){
+			if(readToken(true) != '}'){
+				throw new IOException("Malformed instance weight in row " + rowsRead);
+			}
+			weight = parseNumber();
+			b = read();
+		}
+		instance.setWeight(weight);
+
+		while(b != '\n' && b != END_OF_FILE){
+			b = read();
+		}
+	}
+
+	// read a value into token, returns the byte after it: ',', '\n', END_OF_FILE, or '}' in sparse rows;
+	// values of sparse rows end at a blank as well, as Weka reads them, and pairs separated
+	// by blanks only are taken as separated by a comma
+	private int readToken(boolean sparse) throws IOException {
+
+		tokenLength = 0;
+		tokenQuoted = false;
+
+		int b = read();
+		while(b == ' ' || b == '\t'){
+			b = read();
+		}
+
+		if(b == '\'' || b == '"'){
+
+			int quote = b;
+			tokenQuoted = true;
+			b = read();
+			while(b != quote && b != END_OF_FILE){
+				if(b == '\\'){
+					b = read();
+					if(b == END_OF_FILE){
+						break;
+					}
+					b = unescape(b);
+				}
+				append(b);
+				b = read();
+			}
+			b = read();
+			while(b == ' ' || b == '\t'){
+				b = read();
+			}
+		}
+		else{
+
+			while(b != ',' && b != '\n' && b != '\r' && b != END_OF_FILE && !(sparse && (b == '}' || b == ' ' || b == '\t'))){
+				append(b);
+				b = read();
+			}
+			while(tokenLength > 0 && (token[tokenLength - 1] == ' ' || token[tokenLength - 1] == '\t')){
+				tokenLength--;
+			}
+			while(sparse && (b == ' ' || b == '\t')){
+				b = read();
+			}
+		}
+
+		if(sparse && b != ',' && b != '}' && b != '\n' && b != '\r' && b != END_OF_FILE){
+			unread();
+			b = ',';
+		}
+
+		// a carriage return ends the line as well
+		if(b == '\r'){
+			b = read();
+			if(b != '\n' && b != END_OF_FILE){
+				unread();
+			}
+			b = '\n';
+		}
+		return b;
+	}
+
+	private double parseValue(int attributeIndex) throws IOException {
+
+		if(!tokenQuoted && tokenLength == 1 && token[0] == '?'){
+			return Utils.missingValue();
+		}
+
+		if(nominalValues[attributeIndex] != null){
+
+			int valueIndex = nominalValues[attributeIndex].indexOf(token, tokenLength);
+			if(valueIndex < 0){
+				throw new IOException("Unknown value '" + new String(token, 0, tokenLength, StandardCharsets.UTF_8) 
+						+ "' of attribute " + header.attribute(attributeIndex).name() + " in row " + rowsRead);
+			}
+			return valueIndex;
+		}
+		return parseNumber();
+	}
+
+	// decimal numbers of up to 15 significant digits with small exponents are exact
+	// with one multiplication or division, others go through Double.parseDouble
+	private double parseNumber() throws IOException {
+
+		int i = 0;
+		boolean negative = false;
+		if(i < tokenLength && (token[i] == '-' || token[i] == '+')){
+			negative = token[i] == '-';
+			i++;
+		}
+
+		long mantissa = 0;
+		int significantDigits = 0;
+		int scale = 0;
+		boolean anyDigit = false;
+
+		for (; i < tokenLength && token[i] >= '0' && token[i] <= '9'; i++) {
+			anyDigit = true;
+			if(mantissa != 0 || token[i] != '0'){
+				mantissa = mantissa * 10 + (token[i] - '0');
+				significantDigits++;
+			}
+		}
+		if(i < tokenLength && token[i] == '.'){
+			for (i++; i < tokenLength && token[i] >= '0' && token[i] <= '9'; i++) {
+				anyDigit = true;
+				if(mantissa != 0 || token[i] != '0'){
+					mantissa = mantissa * 10 + (token[i] - '0');
+					significantDigits++;
+				}
+				scale--;
+			}
+		}
+		if(anyDigit && i < tokenLength && (token[i] == 'e' || token[i] == 'E')){
+
+			int exponentStart = ++i;
+			boolean negativeExponent = false;
+			if(i < tokenLength && (token[i] == '-' || token[i] == '+')){
+				negativeExponent = token[i] == '-';
+				i++;
+			}
+			int exponent = 0;
+			for (; i < tokenLength && token[i] >= '0' && token[i] <= '9' && exponent < 1000; i++) {
+				exponent = exponent * 10 + (token[i] - '0');
+			}
+			if(i == exponentStart || (i == exponentStart + 1 && (token[exponentStart] == '-' || token[exponentStart] == '+'))){
+				anyDigit = false;
+			}
+			scale += negativeExponent ? -exponent : exponent;
+		}
+
+		if(anyDigit && i == tokenLength && significantDigits <= 15 && Math.abs(scale) < POWERS_OF_TEN.length){
+			double value = scale >= 0 ? mantissa * POWERS_OF_TEN[scale] : mantissa / POWERS_OF_TEN[-scale];
+			return negative ? -value : value;
+		}
+
+		String number = new String(token, 0, tokenLength, StandardCharsets.UTF_8);
+		try {
+			return Double.parseDouble(number);
+		} catch (NumberFormatException e) {
+			throw new IOException("Not a number '" + number + "' in row " + rowsRead, e);
+		}
+	}
+
+	private void append(int b){
+
+		if(tokenLength == token.length){
+			token = Arrays.copyOf(token, token.length * 2);
+		}
+		token[tokenLength++] = (byte) b;
+	}
+
+	private static int unescape(int b){
+
+		switch(b){
+		case 'n':
+			return '\n';
+		case 't':
+			return '\t';
+		case 'r':
+			return '\r';
+		default:
+			return b;
+		}
+	}
+
+	// skip blank lines and comments, returns the first byte of the next row
+	private int skipToRow() throws IOException {
+
+		while(true){
+
+			int b = read();
+			while(b == ' ' || b == '\t' || b == '\r' || b == '\n'){
+				b = read();
+			}
+			if(arff && b == '%'){
+				skipLine();
+				continue;
+			}
+			return b;
+		}
+	}
+
+	private void skipLine() throws IOException {
+
+		int b = read();
+		while(b != '\n' && b != END_OF_FILE){
+			b = read();
+		}
+	}
+
+	// header lines up to and including @data, parsed by Weka
+	private Instances readArffHeader() throws IOException {
+
+		ByteArrayOutputStream headerBytes = new ByteArrayOutputStream();
+		ByteArrayOutputStream line = new ByteArrayOutputStream();
+
+		while(true){
+
+			line.reset();
+			int b = read();
+			while(b != '\n' && b != END_OF_FILE){
+				line.write(b);
+				b = read();
+			}
+
+			String lineString = new String(line.toByteArray(), StandardCharsets.UTF_8);
+			headerBytes.write(line.toByteArray());
+			headerBytes.write('\n');
+
+			if(lineString.trim().toLowerCase().startsWith("@data")){
+				break;
+			}
+			if(b == END_OF_FILE){
+				close();
+				throw new IOException("No @data section in ARFF file");
+			}
+		}
+
+		String headerText = new String(headerBytes.toByteArray(), StandardCharsets.UTF_8);
+		return new Instances(new BufferedReader(new StringReader(headerText)));
+	}
+
+	private int read() throws IOException {
+
+		long offset = position - chunkStart;
+		if(chunk == null || offset >= chunk.limit()){
+			if(position >= fileSize){
+				releaseChunk();
+				return END_OF_FILE;
+			}
+			mapChunk(position);
+			offset = 0;
+		}
+		position++;
+		return chunk.get((int) offset) & 0xFF;
+	}
+
+	// step back over the last byte read, it is always in the current chunk
+	private void unread(){
+		position--;
+	}
+
+	// the previous chunk is read to its end and released first
+	private void mapChunk(long start) throws IOException {
+		releaseChunk();
+		chunkStart = start;
+		chunk = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(mapChunkBytes, fileSize - start));
+		chunksMapped++;
+	}
+
+	// the chunk is only referenced from this reader, so nothing can read it once unmapped
+	private void releaseChunk(){
+
+		MappedByteBuffer released = chunk;
+		chunk = null;
+		if(released == null || INVOKE_CLEANER == null){
+			return;
+		}
+		try {
+			INVOKE_CLEANER.invoke(UNSAFE, released);
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			// left to the garbage collector
+		}
+	}
+
+	// value indices of a nominal attribute by the bytes of the value, open addressing
+	static class NominalValues {
+
+		final byte[][] valueBytes;
+
+		// value index + 1 per slot, 0 for an empty slot
+		final int[] slots;
+		final int mask;
+
+		NominalValues(Attribute attribute){
+
+			valueBytes = new byte[attribute.numValues()][];
+			int noSlots = Integer.highestOneBit(Math.max(attribute.numValues(), 1) * 4);
+			slots = new int[noSlots];
+			mask = noSlots - 1;
+
+			for (int i = 0; i < attribute.numValues(); i++) {
+				valueBytes[i] = attribute.value(i).getBytes(StandardCharsets.UTF_8);
+				int slot = hash(valueBytes[i], valueBytes[i].length) & mask;
+				while(slots[slot] != 0){
+					slot = (slot + 1) & mask;
+				}
+				slots[slot] = i + 1;
+			}
+		}
+
+		// index of the value, -1 if it is not a value of the attribute
+		int indexOf(byte[] bytes, int length){
+
+			for (int slot = hash(bytes, length) & mask; slots[slot] != 0; slot = (slot + 1) & mask) {
+				byte[] value = valueBytes[slots[slot] - 1];
+				if(value.length == length && equalBytes(value, bytes, length)){
+					return slots[slot] - 1;
+				}
+			}
+			return -1;
+		}
+
+		private static boolean equalBytes(byte[] value, byte[] bytes, int length){
+			for (int i = 0; i < length; i++) {
+				if(value[i] != bytes[i]){
+					return false;
+				}
+			}
+			return true;
+		}
+
+		private static int hash(byte[] bytes, int length){
+			int hash = 0x811C9DC5;
+			for (int i = 0; i < length; i++) {
+				hash = (hash ^ bytes[i]) * 0x01000193;
+			}
+			return hash ^ (hash >>> 16);
+		}
+	}
+
+	// dense instance whose values are written in place instead of copied on every change
+	static class ReusableInstance extends DenseInstance {
+
+		ReusableInstance(int numAttributes){
+			super(numAttributes);
+		}
+
+		double[] values(){
+			return m_AttValues;
+		}
+	}
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2017 Thien Le, Frederic Stahl - University of Reading, UK
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package moa.classifiers.rules;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Random;
+
+// Instances of windows no rules could be learnt from (windows of a single class), kept
+// until a window with other classes arrives. At most capacityPerClass instances are kept
+// for each class: once a class is full, each further instance of the class replaces a
+// random one with a chance of capacityPerClass / instances of the class seen (reservoir
+// sampling), so the kept instances stay a uniform sample of everything offered since the
+// reservoir was last emptied and a long run of one class cannot grow the buffer.
+public class UnlearntReservoir implements Serializable {
+
+	int capacityPerClass;
+	Random random;
+
+	// kept instances of all classes
+	WindowStore instancesStore;
+
+	// per class label: rows of the store holding the class and no. of instances offered
+	int[][] classRows;
+	int[] noClassRows;
+	long[] offeredInstances;
+
+	public UnlearntReservoir(int capacityPerClassIn, long seed){
+		capacityPerClass = capacityPerClassIn;
+		random = new Random(seed);
+		instancesStore = new WindowStore(capacityPerClass);
+	}
+
+	// offer all rows of a store with the same header
+	public void offer(WindowStore source){
+
+		if(classRows == null && !source.isEmpty()){
+			classRows = new int[source.numClasses()][];
+			noClassRows = new int[source.numClasses()];
+			offeredInstances = new long[source.numClasses()];
+		}
+
+		for (int sourceRow = 0; sourceRow < source.size(); sourceRow++) {
+
+			int classLabel = source.classLabel(sourceRow);
+			long offered = ++offeredInstances[classLabel];
+
+			if(noClassRows[classLabel] < capacityPerClass){
+
+				if(classRows[classLabel] == null){
+					classRows[classLabel] = new int[capacityPerClass];
+				}
+				classRows[classLabel][noClassRows[classLabel]++] = instancesStore.size();
+				instancesStore.add(source, sourceRow);
+				continue;
+			}
+
+			long replaced = (long) (random.nextDouble() * offered);
+			if(replaced < capacityPerClass){
+				instancesStore.set(classRows[classLabel][(int) replaced], source, sourceRow);
+			}
+		}
+	}
+
+	// kept instances, only to be read
+	public WindowStore instances(){
+		return instancesStore;
+	}
+
+	public int size(){
+		return instancesStore.size();
+	}
+
+	// share of the capacity of all classes in use, 0 before the first instance
+	public double occupancy(){
+
+		if(classRows == null){
+			return 0.0d;
+		}
+		return (double) instancesStore.size() / ((double) capacityPerClass * classRows.length);
+	}
+
+	public void clear(){
+
+		instancesStore.clear();
+		if(classRows != null){
+			Arrays.fill(noClassRows, 0);
+			Arrays.fill(offeredInstances, 0);
+		}
+	}
+
+	public long estimatedByteSize(){
+
+		long byteSize = instancesStore.estimatedByteSize();
+		if(classRows != null){
+			for (int[] rows : classRows) {
+				byteSize += rows == null ? 0 : 4L * rows.length;
+			}
+		}
+		return byteSize;
+	}
+}
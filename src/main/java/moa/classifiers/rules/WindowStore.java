@@ -0,0 +1,515 @@
+/*
+ * Copyright (C) 2017 Thien Le, Frederic Stahl - University of Reading, UK
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package moa.classifiers.rules;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import weka.core.Attribute;
+import weka.core.Instance;
+import weka.core.SparseInstance;
+import weka.core.Utils;
+
+// Columnar buffer of instances for the Prism learner. Each arriving instance is copied
+// into one primitive column per attribute (int[] value indices for nominal attributes,
+// double[] values otherwise) plus a class label column, so induction scans plain arrays
+// instead of calling Instance.value() on objects spread over the heap.
+// Missing values are stored as -1 in nominal columns and as NaN in numeric columns.
+// A sliding store has a fixed capacity and works as a ring buffer: once full, each added
+// instance overwrites the oldest row, and the statistics of the overwritten row are taken
+// out again, so the statistics always describe the rows currently in the store.
+// A store whose first instance is a SparseInstance keeps its rows in CSR form instead of
+// columns (see SparseRows): adding a row and its statistics only touches its non-zero
+// values, and the implicit zeros are accounted for from per class counts of rows and entries.
+public class WindowStore implements Serializable {
+
+	public static final int MISSING_NOMINAL_VALUE = -1;
+
+	// header information, set up from the first instance added
+	Attribute classAttribute;
+	List<Attribute> attributesList;
+	int numAttributes;
+	int numClasses;
+
+	// columns indexed by attribute index, the column of the other kind is null
+	int[][] nominalColumns;
+	double[][] numericColumns;
+
+	// class label column
+	int[] classLabels;
+
+	// per class mean and variance of the numeric columns, updated as rows are added
+	GaussianStatistics gaussianStatistics;
+
+	// per nominal attribute index: no. of rows by value index * numClasses + class label
+	int[][] nominalClassCounts;
+
+	// rows in CSR form instead of columns, the statistics above then leave out implicit zeros
+	boolean sparse;
+	SparseRows sparseRows;
+
+	// sparse layout only: no. of rows by class label, and no. of entries (missing values
+	// included) by attribute index * numClasses + class label
+	int[] classCounts;
+	int[] entryClassCounts;
+
+	int size;
+	int capacity;
+
+	// ring buffer of a fixed capacity instead of growing columns
+	boolean sliding;
+
+	// row overwritten by the next instance once a sliding store is full
+	int oldestRow;
+
+	public WindowStore(int initialCapacity){
+		this(initialCapacity, false);
+	}
+
+	public WindowStore(int initialCapacity, boolean slidingIn){
+		capacity = Math.max(initialCapacity, 1);
+		sliding = slidingIn;
+		size = 0;
+		oldestRow = 0;
+	}
+
+	// set up columns from the header of an instance
+	private void initialiseLayout(Instance instance){
+
+		classAttribute = instance.classAttribute();
+		attributesList = Collections.unmodifiableList(new ArrayList<>(Collections.list(instance.enumerateAttributes())));
+		numAttributes = instance.numAttributes();
+		numClasses = instance.numClasses();
+		sparse = instance instanceof SparseInstance;
+
+		allocateColumns();
+	}
+
+	private void initialiseLayout(WindowStore other){
+
+		classAttribute = other.classAttribute;
+		attributesList = other.attributesList;
+		numAttributes = other.numAttributes;
+		numClasses = other.numClasses;
+		sparse = other.sparse;
+
+		allocateColumns();
+	}
+
+	private void allocateColumns(){
+
+		nominalColumns = new int[numAttributes][];
+		numericColumns = new double[numAttributes][];
+		nominalClassCounts = new int[numAttributes][];
+
+		for (Attribute attribute : attributesList) {
+			if(attribute.isNominal()){
+				nominalClassCounts[attribute.index()] = new int[attribute.numValues() * numClasses];
+				if(!sparse){
+					nominalColumns[attribute.index()] = new int[capacity];
+				}
+			}else if(!sparse){
+				numericColumns[attribute.index()] = new double[capacity];
+			}
+		}
+		if(sparse){
+			sparseRows = new SparseRows(numAttributes, capacity);
+			classCounts = new int[numClasses];
+			entryClassCounts = new int[numAttributes * numClasses];
+		}
+		classLabels = new int[capacity];
+		gaussianStatistics = new GaussianStatistics(numAttributes, numClasses);
+	}
+
+	private void ensureCapacity(int requiredCapacity){
+
+		if(requiredCapacity <= capacity){
+			return;
+		}
+
+		int newCapacity = Math.max(requiredCapacity, capacity * 2);
+		if(sparse){
+			sparseRows.ensureRows(newCapacity);
+		}
+		for (Attribute attribute : attributesList) {
+			int index = attribute.index();
+			if(nominalColumns[index] != null){
+				nominalColumns[index] = Arrays.copyOf(nominalColumns[index], newCapacity);
+			}else if(numericColumns[index] != null){
+				numericColumns[index] = Arrays.copyOf(numericColumns[index], newCapacity);
+			}
+		}
+		classLabels = Arrays.copyOf(classLabels, newCapacity);
+		capacity = newCapacity;
+	}
+
+	// copy the instance into the columns, a full sliding store overwrites its oldest row
+	public void add(Instance instance){
+
+		if(classLabels == null){
+			initialiseLayout(instance);
+		}
+
+		int row;
+		if(sliding && size == capacity){
+			row = oldestRow;
+			removeStatistics(row);
+			oldestRow = (oldestRow + 1) % capacity;
+		}else{
+			ensureCapacity(size + 1);
+			row = size;
+			size++;
+		}
+
+		int classLabel = (int) instance.classValue();
+		classLabels[row] = classLabel;
+
+		if(sparse){
+			sparseRows.setRow(row, instance);
+			addSparseStatistics(row);
+			return;
+		}
+
+		// indexed loops, add is called for every instance and should not allocate
+		for (int i = 0; i < attributesList.size(); i++) {
+			int index = attributesList.get(i).index();
+			double value = instance.value(index);
+
+			if(nominalColumns[index] != null){
+				int valueIndex = Utils.isMissingValue(value) ? MISSING_NOMINAL_VALUE : (int) value;
+				nominalColumns[index][row] = valueIndex;
+				if(valueIndex != MISSING_NOMINAL_VALUE){
+					nominalClassCounts[index][valueIndex * numClasses + classLabel]++;
+				}
+			}else{
+				numericColumns[index][row] = value;
+				gaussianStatistics.add(index, classLabel, value);
+			}
+		}
+	}
+
+	// append a row of another store with the same header
+	public void add(WindowStore source, int sourceRow){
+
+		if(classLabels == null){
+			initialiseLayout(source);
+		}
+		ensureCapacity(size + 1);
+
+		copyRow(source, sourceRow, size);
+		size++;
+	}
+
+	// overwrite a row with a row of another store with the same header
+	public void set(int row, WindowStore source, int sourceRow){
+
+		removeStatistics(row);
+		copyRow(source, sourceRow, row);
+	}
+
+	private void copyRow(WindowStore source, int sourceRow, int row){
+
+		int classLabel = source.classLabels[sourceRow];
+		classLabels[row] = classLabel;
+
+		if(sparse){
+			sparseRows.setRow(row, source.sparseRows, sourceRow);
+			addSparseStatistics(row);
+			return;
+		}
+
+		for (int i = 0; i < attributesList.size(); i++) {
+			int index = attributesList.get(i).index();
+
+			if(nominalColumns[index] != null){
+				int valueIndex = source.nominalColumns[index][sourceRow];
+				nominalColumns[index][row] = valueIndex;
+				if(valueIndex != MISSING_NOMINAL_VALUE){
+					nominalClassCounts[index][valueIndex * numClasses + classLabel]++;
+				}
+			}else{
+				double value = source.numericColumns[index][sourceRow];
+				numericColumns[index][row] = value;
+				gaussianStatistics.add(index, classLabel, value);
+			}
+		}
+	}
+
+	// statistics of the entries of a sparse row, zeros are left out
+	private void addSparseStatistics(int row){
+
+		int classLabel = classLabels[row];
+		classCounts[classLabel]++;
+
+		for (int entry = sparseRows.rowStart(row); entry < sparseRows.rowEnd(row); entry++) {
+			int index = sparseRows.index(entry);
+			double value = sparseRows.value(entry);
+
+			entryClassCounts[index * numClasses + classLabel]++;
+			if(nominalClassCounts[index] != null){
+				if(!Double.isNaN(value)){
+					nominalClassCounts[index][(int) value * numClasses + classLabel]++;
+				}
+			}else{
+				gaussianStatistics.add(index, classLabel, value);
+			}
+		}
+	}
+
+	// take a row about to be overwritten out of the statistics
+	private void removeStatistics(int row){
+
+		int classLabel = classLabels[row];
+
+		if(sparse){
+			classCounts[classLabel]--;
+			for (int entry = sparseRows.rowStart(row); entry < sparseRows.rowEnd(row); entry++) {
+				int index = sparseRows.index(entry);
+				double value = sparseRows.value(entry);
+
+				entryClassCounts[index * numClasses + classLabel]--;
+				if(nominalClassCounts[index] != null){
+					if(!Double.isNaN(value)){
+						nominalClassCounts[index][(int) value * numClasses + classLabel]--;
+					}
+				}else{
+					gaussianStatistics.remove(index, classLabel, value);
+				}
+			}
+			return;
+		}
+
+		for (int i = 0; i < attributesList.size(); i++) {
+			int index = attributesList.get(i).index();
+
+			if(nominalColumns[index] != null){
+				int valueIndex = nominalColumns[index][row];
+				if(valueIndex != MISSING_NOMINAL_VALUE){
+					nominalClassCounts[index][valueIndex * numClasses + classLabel]--;
+				}
+			}else{
+				gaussianStatistics.remove(index, classLabel, numericColumns[index][row]);
+			}
+		}
+	}
+
+	// append all rows of another store with the same header, rows of a sliding store
+	// are appended in storage order (only a growing store can have rows appended)
+	public void addAll(WindowStore other){
+
+		if(other.size == 0){
+			return;
+		}
+		if(classLabels == null){
+			initialiseLayout(other);
+		}
+		ensureCapacity(size + other.size);
+
+		if(sparse){
+			for (int row = 0; row < other.size; row++) {
+				copyRow(other, row, size + row);
+			}
+			size += other.size;
+			return;
+		}
+
+		for (Attribute attribute : attributesList) {
+			int index = attribute.index();
+			if(nominalColumns[index] != null){
+				System.arraycopy(other.nominalColumns[index], 0, nominalColumns[index], size, other.size);
+				for (int i = 0; i < nominalClassCounts[index].length; i++) {
+					nominalClassCounts[index][i] += other.nominalClassCounts[index][i];
+				}
+			}else{
+				System.arraycopy(other.numericColumns[index], 0, numericColumns[index], size, other.size);
+			}
+		}
+		System.arraycopy(other.classLabels, 0, classLabels, size, other.size);
+		gaussianStatistics.merge(other.gaussianStatistics);
+
+		size += other.size;
+	}
+
+	// independent copy of this store, a copy of a sliding store is a growing store
+	public WindowStore copy(){
+		WindowStore copy = new WindowStore(size);
+		copy.addAll(this);
+		return copy;
+	}
+
+	// keep the columns for reuse
+	public void clear(){
+		size = 0;
+		oldestRow = 0;
+		if(gaussianStatistics != null){
+			gaussianStatistics.clear();
+			for (int[] counts : nominalClassCounts) {
+				if(counts != null){
+					Arrays.fill(counts, 0);
+				}
+			}
+			if(sparse){
+				sparseRows.clear();
+				Arrays.fill(classCounts, 0);
+				Arrays.fill(entryClassCounts, 0);
+			}
+		}
+	}
+
+	public int size(){
+		return size;
+	}
+
+	public boolean isEmpty(){
+		return size == 0;
+	}
+
+	// attributes of the instances without the class attribute
+	public List<Attribute> attributes(){
+		return attributesList;
+	}
+
+	public Attribute classAttribute(){
+		return classAttribute;
+	}
+
+	// no. of attributes in the header including the class attribute
+	public int numAttributes(){
+		return numAttributes;
+	}
+
+	public int numClasses(){
+		return numClasses;
+	}
+
+	// per class statistics of the numeric columns over all rows in the store, for a sparse
+	// store a copy with the implicit zeros added in
+	public GaussianStatistics gaussianStatistics(){
+
+		if(!sparse){
+			return gaussianStatistics;
+		}
+
+		GaussianStatistics statistics = gaussianStatistics.copy();
+		for (int i = 0; i < attributesList.size(); i++) {
+			int index = attributesList.get(i).index();
+			if(nominalClassCounts[index] == null){
+				for (int classLabel = 0; classLabel < numClasses; classLabel++) {
+					statistics.addZeros(index, classLabel, zeroCount(index, classLabel));
+				}
+			}
+		}
+		return statistics;
+	}
+
+	// no. of rows by value index * numClasses + class label of a nominal attribute over all rows
+	// in the store, implicit zeros of a sparse store are not included (see zeroCount)
+	public int[] nominalClassCounts(int attributeIndex){
+		return nominalClassCounts[attributeIndex];
+	}
+
+	public boolean isSparse(){
+		return sparse;
+	}
+
+	// rows of a sparse store, null for a columnar store
+	public SparseRows sparseRows(){
+		return sparseRows;
+	}
+
+	// no. of rows of the class label without an entry for the attribute in a sparse store
+	public int zeroCount(int attributeIndex, int classLabel){
+		return classCounts[classLabel] - entryClassCounts[attributeIndex * numClasses + classLabel];
+	}
+
+	public int classLabel(int row){
+		return classLabels[row];
+	}
+
+	// columns are null for a sparse store
+	public int[] nominalColumn(int attributeIndex){
+		return nominalColumns[attributeIndex];
+	}
+
+	public double[] numericColumn(int attributeIndex){
+		return numericColumns[attributeIndex];
+	}
+
+	public int nominalValue(int row, int attributeIndex){
+
+		if(sparse){
+			double value = sparseRows.value(row, attributeIndex);
+			return Double.isNaN(value) ? MISSING_NOMINAL_VALUE : (int) value;
+		}
+		return nominalColumns[attributeIndex][row];
+	}
+
+	public double numericValue(int row, int attributeIndex){
+
+		if(sparse){
+			return sparseRows.value(row, attributeIndex);
+		}
+		return numericColumns[attributeIndex][row];
+	}
+
+	// rough heap size of the columns and statistics, 0 before the first instance
+	public long estimatedByteSize(){
+		
+		if(classLabels == null){
+			return 0;
+		}
+		
+		long byteSize = 4L * capacity;
+		if(sparse){
+			byteSize += sparseRows.estimatedByteSize() + 4L * entryClassCounts.length;
+			for (int[] counts : nominalClassCounts) {
+				byteSize += counts == null ? 0 : 4L * counts.length;
+			}
+			return byteSize + 3L * 8L * numAttributes * numClasses;
+		}
+		for (Attribute attribute : attributesList) {
+			int index = attribute.index();
+			byteSize += nominalColumns[index] != null ? 4L * (capacity + nominalClassCounts[index].length) : 8L * capacity;
+		}
+		return byteSize + 3L * 8L * numAttributes * numClasses;
+	}
+	
+	// positions of all rows in the store
+	public BitSet allRows(){
+		BitSet rows = new BitSet(size);
+		rows.set(0, size);
+		return rows;
+	}
+
+	// no. of distinct class labels in the store
+	public int noOfClassifications(){
+
+		boolean[] seenClassLabels = new boolean[Math.max(numClasses, 1)];
+		int noOfClassLabels = 0;
+
+		for (int i = 0; i < size; i++) {
+			if(!seenClassLabels[classLabels[i]]){
+				seenClassLabels[classLabels[i]] = true;
+				noOfClassLabels++;
+			}
+		}
+		return noOfClassLabels;
+	}
+}
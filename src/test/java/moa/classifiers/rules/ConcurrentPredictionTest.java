@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2017 Thien Le, Frederic Stahl - University of Reading, UK
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package moa.classifiers.rules;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import moa.classifiers.rules.GeRules.Rule;
+import org.junit.Test;
+import weka.core.Instances;
+
+// Predictions served from rules library snapshots, with rule statistics, rule class
+// distributions and the observed class distribution kept in striped counters, while one
+// thread trains.
+public class ConcurrentPredictionTest {
+
+	static final int NO_READERS = 4;
+
+	@Test
+	public void votesMatchSequentialPrediction() throws Exception {
+
+		Instances data = TestData.cmc();
+
+		GeRules sequential = new GeRules();
+		GeRules concurrent = new GeRules();
+		concurrent.concurrentPredictionOption.set();
+		sequential.prepareForUse();
+		concurrent.prepareForUse();
+
+		for (int i = 0; i < data.numInstances(); i++) {
+
+			// abstaining votes come from the class distribution observed so far
+			assertArrayEquals(sequential.getVotesForInstance(data.instance(i)), concurrent.getVotesForInstance(data.instance(i)), 0.0d);
+			sequential.trainOnInstanceImpl(data.instance(i));
+			concurrent.trainOnInstanceImpl(data.instance(i));
+		}
+
+		assertEquals(sequential.rulesList.size(), concurrent.rulesList.size());
+		for (int i = 0; i < sequential.rulesList.size(); i++) {
+			Rule expected = sequential.rulesList.get(i);
+			Rule actual = concurrent.rulesList.get(i);
+			assertEquals(expected.noOfCovered.sum(), actual.noOfCovered.sum());
+			assertEquals(expected.noOfCorrectlyCovered.sum(), actual.noOfCorrectlyCovered.sum());
+			assertEquals(expected.lastCoveredAt, actual.lastCoveredAt);
+			for (int classLabel = 0; classLabel < data.numClasses(); classLabel++) {
+				assertEquals(expected.classDistribution[classLabel].sum(), actual.classDistribution[classLabel].sum(), 0.0d);
+			}
+			assertEquals(expected.classWithLargestValueInDistribution(), actual.classWithLargestValueInDistribution());
+		}
+		assertEquals(sequential.tentativeAccuracy(), concurrent.tentativeAccuracy(), 0.0d);
+	}
+
+	@Test
+	public void readersPredictWhileTraining() throws Exception {
+
+		final Instances data = TestData.cmc();
+
+		final GeRules learner = new GeRules();
+		learner.concurrentPredictionOption.set();
+		learner.prepareForUse();
+
+		final AtomicBoolean training = new AtomicBoolean(true);
+		final AtomicReference<Throwable> failure = new AtomicReference<>();
+		final long[] noPredictions = new long[NO_READERS];
+		List<Thread> readers = new ArrayList<>();
+		for (int reader = 0; reader < NO_READERS; reader++) {
+			final int readerIndex = reader;
+			Thread thread = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try{
+						int i = readerIndex;
+						while(training.get()){
+							double[] votes = learner.getVotesForInstance(data.instance(i % data.numInstances()));
+							assertEquals(data.numClasses(), votes.length);
+							for (double vote : votes) {
+								assertTrue(vote >= 0.0d);
+							}
+							noPredictions[readerIndex]++;
+							i += NO_READERS;
+						}
+					}catch(Throwable e){
+						failure.compareAndSet(null, e);
+					}
+				}
+			});
+			readers.add(thread);
+			thread.start();
+		}
+
+		for (int repetition = 0; repetition < 3; repetition++) {
+			for (int i = 0; i < data.numInstances(); i++) {
+				learner.trainOnInstanceImpl(data.instance(i));
+			}
+		}
+		training.set(false);
+		for (Thread thread : readers) {
+			thread.join();
+		}
+
+		assertNull(failure.get());
+		long total = 0;
+		for (long predictions : noPredictions) {
+			total += predictions;
+		}
+		assertEquals(total, learner.seenInstances());
+		assertTrue(learner.rulesList.size() > 0);
+	}
+}
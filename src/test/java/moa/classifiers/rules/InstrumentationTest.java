@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2017 Thien Le, Frederic Stahl - University of Reading, UK
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package moa.classifiers.rules;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Field;
+import java.util.HashMap;
+import java.util.Map;
+import moa.core.Measurement;
+import moa.options.Option;
+import org.junit.Test;
+import weka.core.Instances;
+
+public class InstrumentationTest {
+
+	@Test
+	public void instrumentationIsOffByDefault() throws Exception {
+
+		GeRules learner = train(new GeRules());
+
+		assertNull(learner.instrumentation);
+		assertEquals(3, learner.getModelMeasurementsImpl().length);
+	}
+
+	@Test
+	public void instrumentationReportsTimesAndRulesLibrary() throws Exception {
+
+		GeRules learner = new GeRules();
+		learner.instrumentationOption.set();
+		train(learner);
+
+		assertNotNull(learner.instrumentation);
+		Map<String, Double> measurements = new HashMap<>();
+		for (Measurement measurement : learner.getModelMeasurementsImpl()) {
+			measurements.put(measurement.getName(), measurement.getValue());
+		}
+		assertEquals(learner.rulesList.size(), measurements.get("Rules Library Size"), 0.0d);
+		assertTrue(measurements.get("Rules Added") >= learner.rulesList.size());
+		assertTrue(measurements.get("Coverage Lookup Max (ns)") > 0.0d);
+		assertTrue(measurements.get("Learn Rules Max (ns)") > 0.0d);
+	}
+
+	@Test
+	public void optionCharsAreUnique() throws Exception {
+
+		// MOA rejects options sharing a CLI char when the options of a learner are collected
+		GeRules learner = new GeRules();
+		Map<Character, String> names = new HashMap<>();
+		for (Field field : GeRules.class.getFields()) {
+			if(Option.class.isAssignableFrom(field.getType())){
+				Option option = (Option) field.get(learner);
+				assertNull(option.getName() + " uses the char of " + names.get(option.getCLIChar()), 
+						names.put(option.getCLIChar(), option.getName()));
+			}
+		}
+		assertEquals("instrumentation", names.get('n'));
+		assertEquals("ruleValidationThreshold", names.get('t'));
+	}
+
+	private static GeRules train(GeRules learner) throws Exception {
+
+		learner.prepareForUse();
+		Instances data = TestData.cmc();
+		for (int i = 0; i < data.numInstances(); i++) {
+			learner.getVotesForInstance(data.instance(i));
+			learner.trainOnInstanceImpl(data.instance(i));
+		}
+		return learner;
+	}
+}
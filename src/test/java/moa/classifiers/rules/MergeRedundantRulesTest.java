@@ -0,0 +1,192 @@
+/*
+ * Copyright (C) 2017 Thien Le, Frederic Stahl - University of Reading, UK
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package moa.classifiers.rules;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import moa.classifiers.rules.GeRules.Rule;
+import org.junit.Test;
+import weka.core.Instances;
+
+// Redundant rules found through the rule index compared with a scan of the whole rules
+// library, the way rules were merged before the index was used: every merge of a stream
+// has to keep and replace the same rules.
+public class MergeRedundantRulesTest {
+
+	@Test
+	public void slidingWindowsMergeLikeLibraryScan() throws Exception {
+
+		CheckedGeRules learner = new CheckedGeRules();
+		learner.slidingWindowsSizeOption.setValue(500);
+		learner.slideStepOption.setValue(100);
+		assertMergesLikeLibraryScan(learner, TestData.cmc(), 3);
+	}
+
+	@Test
+	public void consecutiveWindowsMergeLikeLibraryScan() throws Exception {
+
+		CheckedGeRules learner = new CheckedGeRules();
+		learner.mergeRedundantRulesOption.set();
+		learner.slidingWindowsSizeOption.setValue(200);
+		assertMergesLikeLibraryScan(learner, TestData.cmc(), 5);
+	}
+
+	@Test
+	public void sparseWindowsMergeLikeLibraryScan() throws Exception {
+
+		CheckedGeRules learner = new CheckedGeRules();
+		learner.slidingWindowsSizeOption.setValue(200);
+		learner.slideStepOption.setValue(50);
+		assertMergesLikeLibraryScan(learner, TestData.sparse(), 3);
+	}
+
+	@Test
+	public void libraryWithoutMergingKeepsNoTermBuckets() throws Exception {
+
+		GeRules learner = new GeRules();
+		learner.prepareForUse();
+		Instances data = TestData.cmc();
+		for (int i = 0; i < data.numInstances(); i++) {
+			learner.trainOnInstanceImpl(data.instance(i));
+		}
+
+		assertFalse(learner.mergesRedundantRules());
+		assertTrue(learner.rulesList.size() > 0);
+		assertEquals(null, learner.ruleIndex.termBuckets);
+		assertTrue(learner.rulesByKey.isEmpty());
+	}
+
+	private static void assertMergesLikeLibraryScan(CheckedGeRules learner, Instances data, int repetitions){
+
+		learner.prepareForUse();
+		for (int repetition = 0; repetition < repetitions; repetition++) {
+			for (int i = 0; i < data.numInstances(); i++) {
+				learner.trainOnInstanceImpl(data.instance(i));
+			}
+		}
+
+		assertTrue(learner.noMerges > 0);
+		assertTrue(learner.noRedundantRules > 0);
+		assertTrue(learner.noSubsumedLibraryRules > 0);
+
+		// no rule of the library is left subsuming another one
+		for (Rule rule : learner.rulesList) {
+			for (Rule other : learner.rulesList) {
+				assertTrue(rule == other || !rule.key().subsumes(other.key()));
+			}
+		}
+	}
+
+	// checks every merge against the library scan before merging
+	static class CheckedGeRules extends GeRules {
+
+		int noMerges;
+		int noRedundantRules;
+		int noSubsumedLibraryRules;
+
+		@Override
+		List<Rule> mergeRedundantRules(List<Rule> rules, List<Rule> subsumedRules){
+
+			List<Rule> expectedSubsumedRules = new ArrayList<>();
+			List<Rule> expectedRules = scanLibrary(rules, expectedSubsumedRules);
+
+			List<Rule> mergedRules = super.mergeRedundantRules(rules, subsumedRules);
+
+			assertSameRules(expectedRules, mergedRules);
+			assertSameRules(expectedSubsumedRules, subsumedRules);
+
+			noMerges++;
+			noRedundantRules += rules.size() - mergedRules.size();
+			noSubsumedLibraryRules += subsumedRules.size();
+			return mergedRules;
+		}
+
+		// rules kept and library rules replaced, found by going through the whole rules library
+		private List<Rule> scanLibrary(List<Rule> rules, List<Rule> subsumedRules){
+
+			List<Rule> mergedRules = new ArrayList<>();
+			Map<RuleKey, Rule> mergedRulesByKey = new HashMap<>();
+			Set<Rule> subsumedLibraryRules = Collections.newSetFromMap(new IdentityHashMap<Rule, Boolean>());
+
+			for (Rule rule : rules) {
+
+				RuleKey key = rule.key();
+
+				Rule identicalRule = rulesByKey.get(key);
+				if(identicalRule == null || subsumedLibraryRules.contains(identicalRule)){
+					identicalRule = mergedRulesByKey.get(key);
+				}
+				if(identicalRule != null){
+					continue;
+				}
+
+				Rule generalRule = null;
+				for (Rule libraryRule : rulesList) {
+					if(!subsumedLibraryRules.contains(libraryRule) && libraryRule.key().subsumes(key)){
+						generalRule = libraryRule;
+						break;
+					}
+				}
+				for (int i = 0; generalRule == null && i < mergedRules.size(); i++) {
+					if(mergedRules.get(i).key().subsumes(key)){
+						generalRule = mergedRules.get(i);
+					}
+				}
+				if(generalRule != null){
+					continue;
+				}
+
+				for (Rule libraryRule : rulesList) {
+					if(!subsumedLibraryRules.contains(libraryRule) && key.subsumes(libraryRule.key())){
+						subsumedLibraryRules.add(libraryRule);
+						subsumedRules.add(libraryRule);
+					}
+				}
+				for (Iterator<Rule> iterator = mergedRules.iterator(); iterator.hasNext();) {
+					Rule mergedRule = iterator.next();
+					if(key.subsumes(mergedRule.key())){
+						iterator.remove();
+						mergedRulesByKey.remove(mergedRule.key());
+					}
+				}
+
+				mergedRules.add(rule);
+				mergedRulesByKey.put(key, rule);
+			}
+			return mergedRules;
+		}
+
+		private static void assertSameRules(List<Rule> expected, List<Rule> actual){
+
+			assertEquals(expected.size(), actual.size());
+			for (int i = 0; i < expected.size(); i++) {
+				assertSame(expected.get(i), actual.get(i));
+			}
+		}
+	}
+}
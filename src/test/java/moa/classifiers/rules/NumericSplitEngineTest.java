@@ -0,0 +1,207 @@
+/*
+ * Copyright (C) 2017 Thien Le, Frederic Stahl - University of Reading, UK
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package moa.classifiers.rules;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Random;
+import org.junit.Test;
+import weka.core.Attribute;
+import weka.core.DenseInstance;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.SparseInstance;
+
+// Bounds of numeric rule terms from the sorted path (datasets of at least an eighth of the
+// store) and the sweep path (smaller datasets). Each dataset is put into a store twice,
+// padded with other rows to either side of the threshold, so both paths see the same rows.
+// The sparse path sees the same rows from sparse instances, where the zeros of the dataset
+// are rows without an entry.
+public class NumericSplitEngineTest {
+
+	static final double NAN = Double.NaN;
+
+	// rows of the store outside the dataset, close to the means below so rows leaking into
+	// the dataset would change the bounds
+	static final double PADDING_VALUE = 3.0d;
+
+	@Test
+	public void equalDistancesGoToTheSmallerValue(){
+		assertBounds(new double[]{1.0d, 2.0d, 4.0d, 5.0d}, 3.0d, 1.0d, 4.0d);
+	}
+
+	@Test
+	public void boundsAreTheNextDistinctValues(){
+		assertBounds(new double[]{2.0d, 2.0d, 2.5d, 2.5d, 4.0d, 4.0d, 1.0d, 1.0d}, 2.4d, 2.0d, 4.0d);
+	}
+
+	@Test
+	public void valueAtTheEndsIsItsOwnBound(){
+		assertBounds(new double[]{5.0d, 6.0d, 7.0d}, -10.0d, 5.0d, 6.0d);
+		assertBounds(new double[]{5.0d, 6.0d, 7.0d}, 10.0d, 6.0d, 7.0d);
+		assertBounds(new double[]{5.0d, 5.0d}, 5.0d, 5.0d, 5.0d);
+	}
+
+	@Test
+	public void missingValuesAreLeftOut(){
+		assertBounds(new double[]{NAN, 1.0d, NAN, 4.0d, 6.0d, NAN}, 3.9d, 1.0d, 6.0d);
+	}
+
+	@Test
+	public void datasetWithoutValuesHasNoBounds(){
+		assertBounds(new double[]{NAN, NAN, NAN}, 3.0d, NAN, NAN);
+	}
+
+	@Test
+	public void implicitZerosAreCandidates(){
+		assertBounds(new double[]{0.0d, 0.0d, 2.0d, -1.0d}, 0.4d, -1.0d, 2.0d);
+		assertBounds(new double[]{0.0d, 2.0d, -1.0d}, 1.2d, 0.0d, 2.0d);
+		assertBounds(new double[]{0.0d, 2.0d, -1.0d}, -0.5d, -1.0d, 0.0d);
+		assertBounds(new double[]{0.0d, 0.0d}, 5.0d, 0.0d, 0.0d);
+		assertBounds(new double[]{0.0d, NAN, 1.0d}, 0.6d, 0.0d, 1.0d);
+	}
+
+	@Test
+	public void emptyDatasetHasNoBounds(){
+
+		WindowStore instancesStore = store(new double[]{1.0d, 2.0d});
+		assertNull(new NumericSplitEngine(instancesStore).findBounds(0, 1.5d, new BitSet()));
+	}
+
+	@Test
+	public void pathsAgreeWithDirectSearchOnRandomDatasets(){
+
+		Random random = new Random(7);
+		for (int i = 0; i < 200; i++) {
+
+			double[] values = new double[1 + random.nextInt(12)];
+			for (int j = 0; j < values.length; j++) {
+				// few distinct values, so there are ties, and some missing values
+				values[j] = random.nextInt(6) == 0 ? NAN : random.nextInt(5) - 2;
+			}
+			double mean = random.nextInt(9) / 2.0d - 2.0d;
+
+			double[] expected = directBounds(values, mean);
+			assertBounds(values, mean,
+					expected == null ? NAN : expected[0],
+					expected == null ? NAN : expected[1]);
+		}
+	}
+
+	// same bounds from the sorted, the sweep and the sparse path, no bounds if lowerBound is NaN
+	static void assertBounds(double[] datasetValues, double mean, double lowerBound, double upperBound){
+
+		double[] expected = Double.isNaN(lowerBound) ? null : new double[]{lowerBound, upperBound};
+
+		// dataset of more than an eighth of the store is looked up in sorted order
+		assertBoundsWithPadding(datasetValues, mean, expected, datasetValues.length * 2, false);
+
+		// otherwise swept
+		assertBoundsWithPadding(datasetValues, mean, expected, datasetValues.length * NumericSplitEngine.DIRECT_SWEEP_RATIO + 1, false);
+
+		// entries of a sparse store are swept whatever the size of the dataset
+		assertBoundsWithPadding(datasetValues, mean, expected, datasetValues.length * 2, true);
+	}
+
+	private static void assertBoundsWithPadding(double[] datasetValues, double mean, double[] expected, int storeSize, boolean sparse){
+
+		double[] values = new double[storeSize];
+		Arrays.fill(values, PADDING_VALUE);
+
+		// dataset rows spread over the store
+		BitSet rows = new BitSet(storeSize);
+		int step = storeSize / datasetValues.length;
+		for (int i = 0; i < datasetValues.length; i++) {
+			values[i * step] = datasetValues[i];
+			rows.set(i * step);
+		}
+
+		WindowStore instancesStore = store(values, sparse);
+		assertEquals(sparse, instancesStore.isSparse());
+
+		double[] bounds = new NumericSplitEngine(instancesStore).findBounds(0, mean, rows);
+		String message = Arrays.toString(datasetValues) + " mean " + mean + " store " + storeSize + (sparse ? " sparse" : "");
+		if(expected == null){
+			assertNull(message, bounds);
+		}else{
+			assertArrayEquals(message, expected, bounds, 0.0d);
+		}
+	}
+
+	// value closest to the mean (ties to the smaller one) and its neighbouring distinct values
+	static double[] directBounds(double[] values, double mean){
+
+		double best = NAN;
+		for (double value : values) {
+			if(!Double.isNaN(value) && (Double.isNaN(best) || Math.abs(value - mean) < Math.abs(best - mean)
+					|| (Math.abs(value - mean) == Math.abs(best - mean) && value < best))){
+				best = value;
+			}
+		}
+		if(Double.isNaN(best)){
+			return null;
+		}
+
+		double lowerBound = Double.NEGATIVE_INFINITY;
+		double upperBound = Double.POSITIVE_INFINITY;
+		for (double value : values) {
+			if(value < best && value > lowerBound){
+				lowerBound = value;
+			}
+			if(value > best && value < upperBound){
+				upperBound = value;
+			}
+		}
+		return new double[]{
+				lowerBound == Double.NEGATIVE_INFINITY ? best : lowerBound,
+				upperBound == Double.POSITIVE_INFINITY ? best : upperBound};
+	}
+
+	static Instances header(){
+
+		ArrayList<Attribute> attributes = new ArrayList<>();
+		attributes.add(new Attribute("x"));
+		attributes.add(new Attribute("class", Arrays.asList("a", "b")));
+		Instances header = new Instances("engine", attributes, 0);
+		header.setClassIndex(1);
+		return header;
+	}
+
+	static WindowStore store(double[] values){
+		return store(values, false);
+	}
+
+	static WindowStore store(double[] values, boolean sparse){
+
+		Instances header = header();
+		WindowStore instancesStore = new WindowStore(values.length);
+		for (int i = 0; i < values.length; i++) {
+			Instance instance = new DenseInstance(1.0d, new double[]{values[i], i % 2});
+			if(sparse){
+				instance = new SparseInstance(instance);
+			}
+			instance.setDataset(header);
+			instancesStore.add(instance);
+		}
+		return instancesStore;
+	}
+}
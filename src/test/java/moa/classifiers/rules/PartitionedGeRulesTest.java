@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2017 Thien Le, Frederic Stahl - University of Reading, UK
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package moa.classifiers.rules;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import weka.core.Instances;
+
+public class PartitionedGeRulesTest {
+
+	@Test
+	public void trainsTwoShardsOnCmc() throws Exception {
+
+		Instances data = TestData.cmc();
+
+		PartitionedGeRules learner = new PartitionedGeRules();
+		learner.numShardsOption.setValue(2);
+		learner.prepareForUse();
+
+		for (int i = 0; i < data.numInstances(); i++) {
+			learner.getVotesForInstance(data.instance(i));
+			learner.trainOnInstance(data.instance(i));
+		}
+		learner.awaitTraining();
+
+		assertEquals(2, learner.shards.length);
+		assertNotSame(learner.shards[0], learner.shards[1]);
+		assertNotSame(learner.shards[0].rulesList, learner.shards[1].rulesList);
+		assertTrue(learner.shards[0].concurrentPredictionOption.isSet());
+
+		// every shard has seen half of the stream and learnt rules from it
+		for (GeRules shard : learner.shards) {
+			assertTrue(shard.rulesList.size() > 0);
+		}
+		assertTrue(learner.mergedRules().size() > 0);
+		assertTrue(learner.abstainingRate() < 1.0d);
+	}
+
+	@Test
+	public void resetStartsFromEmptyShards() throws Exception {
+
+		Instances data = TestData.cmc();
+
+		PartitionedGeRules learner = new PartitionedGeRules();
+		learner.numShardsOption.setValue(2);
+		learner.mergeIntervalOption.setValue(500);
+		learner.prepareForUse();
+
+		for (int i = 0; i < data.numInstances(); i++) {
+			learner.trainOnInstance(data.instance(i));
+		}
+		learner.awaitTraining();
+		learner.resetLearning();
+
+		for (GeRules shard : learner.shards) {
+			assertEquals(0, shard.rulesList.size());
+		}
+	}
+}
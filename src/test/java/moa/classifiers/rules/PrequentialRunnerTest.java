@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2017 Thien Le, Frederic Stahl - University of Reading, UK
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package moa.classifiers.rules;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.Utils;
+
+public class PrequentialRunnerTest {
+
+	@Test
+	public void ratesMatchSequentialEvaluation() throws Exception {
+		assertRatesMatchSequentialEvaluation(new File(TestData.CMC), false);
+	}
+
+	@Test
+	public void ratesMatchSequentialEvaluationWithConcurrentPrediction() throws Exception {
+		assertRatesMatchSequentialEvaluation(new File(TestData.CMC), true);
+	}
+
+	@Test
+	public void instanceWeightsReachTheLearner() throws Exception {
+
+		// cmc with weights 1 to 4 after the values of the rows
+		List<String> lines = new ArrayList<>();
+		boolean data = false;
+		int row = 0;
+		for (String line : Files.readAllLines(new File(TestData.CMC).toPath(), StandardCharsets.UTF_8)) {
+			if(data && !line.trim().isEmpty() && !line.startsWith("%")){
+				line += ",{" + (1 + row++ % 4) + "}";
+			}
+			data |= line.trim().toLowerCase().startsWith("@data");
+			lines.add(line);
+		}
+
+		File file = File.createTempFile("weighted-cmc", ".arff");
+		try {
+			Files.write(file.toPath(), lines, StandardCharsets.UTF_8);
+			assertRatesMatchSequentialEvaluation(file, false);
+		} finally {
+			file.delete();
+		}
+	}
+
+	@Test
+	public void reportIntervalZeroReportsAtTheEndOnly() throws Exception {
+
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		PrequentialRunner runner = new PrequentialRunner(new File(TestData.CMC), newLearner(false), 0, 64, new PrintStream(output, true));
+		runner.run();
+
+		String[] lines = output.toString().trim().split("\\r?\\n");
+		assertEquals(2, lines.length);
+		assertEquals(PrequentialRunner.REPORT_HEADER, lines[0]);
+		assertTrue(lines[1].startsWith(runner.instances + ","));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void negativeReportIntervalIsRejected() {
+		new PrequentialRunner(new File(TestData.CMC), newLearner(false), -1, 64, System.out);
+	}
+
+	private void assertRatesMatchSequentialEvaluation(File file, boolean concurrentPrediction) throws Exception {
+
+		PrequentialRunner runner = new PrequentialRunner(file, newLearner(concurrentPrediction), 500, 64, 
+				new PrintStream(new ByteArrayOutputStream(), true));
+		runner.run();
+
+		// the same learner evaluated test-then-train on the calling thread
+		Instances data = TestData.read(file.getPath());
+		GeRules learner = newLearner(concurrentPrediction);
+		int correct = 0;
+		for (int i = 0; i < data.numInstances(); i++) {
+			Instance instance = data.instance(i);
+			if(Utils.maxIndex(learner.getVotesForInstance(instance)) == (int) instance.classValue()){
+				correct++;
+			}
+			learner.trainOnInstanceImpl(instance);
+		}
+
+		assertEquals(data.numInstances(), runner.instances);
+		assertEquals((double) correct / data.numInstances(), runner.accuracy, 1e-12);
+		assertEquals(learner.abstainingRate(), runner.abstainingRate, 1e-12);
+		assertEquals(learner.tentativeAccuracy(), runner.tentativeAccuracy, 1e-12);
+		assertTrue(runner.abstainingRate > 0.0d);
+
+		// the class distribution adds up the weights of the instances
+		assertEquals(Arrays.toString(learner.observedClassDistribution.getArrayCopy()), 
+				Arrays.toString(runner.geRules.observedClassDistribution.getArrayCopy()));
+		assertEquals(data.sumOfWeights(), runner.geRules.observedClassDistribution.sumOfValues(), 0.0d);
+	}
+
+	private static GeRules newLearner(boolean concurrentPrediction){
+
+		GeRules learner = new GeRules();
+		if(concurrentPrediction){
+			learner.concurrentPredictionOption.set();
+		}
+		learner.prepareForUse();
+		return learner;
+	}
+}
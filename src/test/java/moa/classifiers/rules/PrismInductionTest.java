@@ -0,0 +1,367 @@
+/*
+ * Copyright (C) 2017 Thien Le, Frederic Stahl - University of Reading, UK
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package moa.classifiers.rules;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import moa.classifiers.rules.GeRules.Rule;
+import moa.classifiers.rules.GeRules.RuleTerm;
+import org.apache.commons.math3.distribution.NormalDistribution;
+import org.junit.Test;
+import weka.core.Attribute;
+import weka.core.Instance;
+import weka.core.Instances;
+
+// Rules induced from windows of cmc by the Prism learner (columnar store, bitset datasets,
+// contingency counts and presorted numeric bounds) compared with a direct implementation
+// of the same Prism induction on lists of instances, which scans the whole dataset for
+// every candidate term the way the learner did before it was rewritten.
+public class PrismInductionTest {
+
+	static final int WINDOW_SIZE = 500;
+
+	@Test
+	public void windowsInduceTheReferenceRules() throws Exception {
+		assertReferenceRules(new GeRules());
+	}
+
+	@Test
+	public void parallelInductionInducesTheReferenceRules() throws Exception {
+
+		GeRules learner = new GeRules();
+		learner.parallelClassInductionOption.set();
+		learner.parallelAttributeScoringOption.set();
+		learner.attributeChunkSizeOption.setValue(2);
+		assertReferenceRules(learner);
+	}
+
+	@Test
+	public void threadsShareOneInductionPool() throws Exception {
+
+		for (int round = 0; round < 20; round++) {
+
+			final GeRules learner = new GeRules();
+			learner.inductionParallelismOption.setValue(2);
+			learner.prepareForUse();
+
+			// the threads ask for the pool at the same time, as the stream thread and a
+			// background induction can
+			final CountDownLatch start = new CountDownLatch(1);
+			final ForkJoinPool[] pools = new ForkJoinPool[4];
+			Thread[] threads = new Thread[pools.length];
+			for (int i = 0; i < threads.length; i++) {
+				final int threadIndex = i;
+				threads[i] = new Thread(new Runnable() {
+					@Override
+					public void run() {
+						try {
+							start.await();
+							pools[threadIndex] = learner.inductionPool();
+						} catch (InterruptedException e) {
+							Thread.currentThread().interrupt();
+						}
+					}
+				});
+				threads[i].start();
+			}
+			start.countDown();
+			for (Thread thread : threads) {
+				thread.join();
+			}
+
+			for (ForkJoinPool pool : pools) {
+				assertSame(learner.inductionPool, pool);
+			}
+			assertEquals(2, learner.inductionPool.getParallelism());
+			learner.inductionPool.shutdown();
+		}
+	}
+
+	private void assertReferenceRules(GeRules learner) throws Exception {
+
+		learner.prepareForUse();
+		Instances data = TestData.cmc();
+
+		int noRules = 0;
+		for (List<Instance> window : windows(data)) {
+
+			WindowStore instancesStore = new WindowStore(window.size());
+			for (Instance instance : window) {
+				instancesStore.add(instance);
+			}
+			GaussianStatistics gaussianStatistics = instancesStore.gaussianStatistics();
+
+			List<String> expected = new ReferencePrism(data, window, gaussianStatistics).induceRules();
+			List<String> induced = describe(learner.prismClassifier.induceRules(instancesStore, gaussianStatistics, 0));
+
+			assertEquals(expected, induced);
+			noRules += induced.size();
+		}
+		assertTrue(noRules > 0);
+	}
+
+	// consecutive windows and the whole data set
+	static List<List<Instance>> windows(Instances data){
+
+		List<List<Instance>> windows = new ArrayList<>();
+		for (int start = 0; start < data.numInstances(); start += WINDOW_SIZE) {
+			List<Instance> window = new ArrayList<>();
+			for (int i = start; i < Math.min(start + WINDOW_SIZE, data.numInstances()); i++) {
+				window.add(data.instance(i));
+			}
+			windows.add(window);
+		}
+
+		List<Instance> all = new ArrayList<>();
+		for (int i = 0; i < data.numInstances(); i++) {
+			all.add(data.instance(i));
+		}
+		windows.add(all);
+		return windows;
+	}
+
+	static List<String> describe(List<Rule> rules){
+
+		List<String> descriptions = new ArrayList<>();
+		for (Rule rule : rules) {
+			StringBuilder description = new StringBuilder();
+			for (RuleTerm ruleTerm : rule.listOfRuleTerm) {
+				description.append(ruleTerm.attribute_type == RuleTerm.CATEGORICAL_ATTRIBUTE
+						? term(ruleTerm.attribute.index(), ruleTerm.value)
+						: term(ruleTerm.attribute.index(), ruleTerm.numericLowerBound, ruleTerm.numericUpperBound));
+			}
+			descriptions.add(rule(description.toString(), rule.classification, rule.instancesCoveredWhenRuleCreated));
+		}
+		return descriptions;
+	}
+
+	static String term(int attributeIndex, double value){
+		return attributeIndex + "=" + value + " ";
+	}
+
+	static String term(int attributeIndex, double lowerBound, double upperBound){
+		return attributeIndex + " in (" + lowerBound + ", " + upperBound + "] ";
+	}
+
+	static String rule(String terms, double classification, int covered){
+		return terms + "=> " + classification + " covers " + covered;
+	}
+
+	// Prism on lists of instances: every candidate term is scored by scanning the dataset
+	static class ReferencePrism {
+
+		final Instances header;
+		final List<Instance> window;
+		final GaussianStatistics gaussianStatistics;
+
+		ReferencePrism(Instances headerIn, List<Instance> windowIn, GaussianStatistics gaussianStatisticsIn){
+			header = headerIn;
+			window = windowIn;
+			gaussianStatistics = gaussianStatisticsIn;
+		}
+
+		List<String> induceRules(){
+
+			List<String> rules = new ArrayList<>();
+			for (int classLabel = 0; classLabel < header.numClasses(); classLabel++) {
+				induceRulesForClass(classLabel, rules);
+			}
+			return rules;
+		}
+
+		private void induceRulesForClass(int classLabel, List<String> rules){
+
+			List<Instance> original = new ArrayList<>(window);
+
+			while(true){
+
+				List<Instance> datasetD = new ArrayList<>(original);
+				List<Integer> usedAttributes = new ArrayList<>();
+				StringBuilder terms = new StringBuilder();
+				int noTerms = 0;
+				boolean goodRule = true;
+
+				while(containsOtherClasses(datasetD, classLabel)){
+
+					// best term, ties go to the earlier attribute and then the smaller value
+					int bestAttribute = -1;
+					double bestProbability = -1.0d;
+					double bestValue = 0.0d;
+					double[] bestBounds = null;
+
+					for (int attributeIndex = 0; attributeIndex < header.numAttributes(); attributeIndex++) {
+
+						Attribute attribute = header.attribute(attributeIndex);
+						if(attributeIndex == header.classIndex() || usedAttributes.contains(attributeIndex)){
+							continue;
+						}
+
+						if(attribute.isNominal()){
+							for (int value = 0; value < attribute.numValues(); value++) {
+								double probability = nominalProbability(datasetD, attributeIndex, value, classLabel);
+								if(probability > bestProbability){
+									bestAttribute = attributeIndex;
+									bestProbability = probability;
+									bestValue = value;
+									bestBounds = null;
+								}
+							}
+						}else{
+							if(gaussianStatistics.weight(attributeIndex, classLabel) == 0.0d){
+								continue;
+							}
+							double[] bounds = bounds(datasetD, attributeIndex, gaussianStatistics.mean(attributeIndex, classLabel));
+							if(bounds == null){
+								continue;
+							}
+							NormalDistribution normalDistribution = new NormalDistribution(null,
+									gaussianStatistics.mean(attributeIndex, classLabel),
+									Math.max(gaussianStatistics.standardDeviation(attributeIndex, classLabel), GeRules.PrismClassifier.MIN_STANDARD_DEVIATION));
+							double probability = normalDistribution.probability(bounds[0], bounds[1]);
+							if(probability > bestProbability){
+								bestAttribute = attributeIndex;
+								bestProbability = probability;
+								bestBounds = bounds;
+							}
+						}
+					}
+
+					if(bestAttribute < 0){
+						goodRule = isMajority(datasetD, classLabel);
+						break;
+					}
+					if(bestProbability == 0.0d){
+						break;
+					}
+
+					usedAttributes.add(bestAttribute);
+					noTerms++;
+					List<Instance> covered = new ArrayList<>();
+					for (Instance instance : datasetD) {
+						double value = instance.value(bestAttribute);
+						if(bestBounds == null ? value == bestValue : (value > bestBounds[0] && value <= bestBounds[1])){
+							covered.add(instance);
+						}
+					}
+					terms.append(bestBounds == null ? term(bestAttribute, bestValue) : term(bestAttribute, bestBounds[0], bestBounds[1]));
+					datasetD = covered;
+				}
+
+				if(goodRule && noTerms > 0){
+					rules.add(rule(terms.toString(), classLabel, datasetD.size()));
+				}
+
+				// instances are removed by identity, equal instances are different rows
+				for (Instance instance : datasetD) {
+					for (int i = 0; i < original.size(); i++) {
+						if(original.get(i) == instance){
+							original.remove(i);
+							break;
+						}
+					}
+				}
+
+				boolean classLeft = false;
+				for (Instance instance : datasetD) {
+					classLeft |= (int) instance.classValue() == classLabel;
+				}
+				if(!classLeft){
+					return;
+				}
+			}
+		}
+
+		private static boolean containsOtherClasses(List<Instance> dataset, int classLabel){
+
+			for (Instance instance : dataset) {
+				if((int) instance.classValue() != classLabel){
+					return true;
+				}
+			}
+			return false;
+		}
+
+		private static double nominalProbability(List<Instance> dataset, int attributeIndex, int value, int classLabel){
+
+			int covered = 0;
+			int coveredWithClass = 0;
+			for (Instance instance : dataset) {
+				if(instance.value(attributeIndex) == value){
+					covered++;
+					if((int) instance.classValue() == classLabel){
+						coveredWithClass++;
+					}
+				}
+			}
+			return covered == 0 ? 0.0d : (double) coveredWithClass / (double) covered;
+		}
+
+		// value closest to the mean (ties to the smaller one) and its neighbouring distinct values
+		static double[] bounds(List<Instance> dataset, int attributeIndex, double mean){
+
+			double best = Double.NaN;
+			for (Instance instance : dataset) {
+				double value = instance.value(attributeIndex);
+				if(Double.isNaN(value)){
+					continue;
+				}
+				if(Double.isNaN(best) || Math.abs(value - mean) < Math.abs(best - mean)
+						|| (Math.abs(value - mean) == Math.abs(best - mean) && value < best)){
+					best = value;
+				}
+			}
+			if(Double.isNaN(best)){
+				return null;
+			}
+
+			double lowerBound = best;
+			double upperBound = best;
+			for (Instance instance : dataset) {
+				double value = instance.value(attributeIndex);
+				if(value < best && (lowerBound == best || value > lowerBound)){
+					lowerBound = value;
+				}
+				if(value > best && (upperBound == best || value < upperBound)){
+					upperBound = value;
+				}
+			}
+			return new double[]{lowerBound, upperBound};
+		}
+
+		// the class with the highest share of the dataset, equal shares go to the later class
+		private boolean isMajority(List<Instance> dataset, int classLabel){
+
+			int[] counts = new int[header.numClasses()];
+			for (Instance instance : dataset) {
+				counts[(int) instance.classValue()]++;
+			}
+			int majority = 0;
+			for (int i = 1; i < counts.length; i++) {
+				if(counts[i] >= counts[majority]){
+					majority = i;
+				}
+			}
+			return majority == classLabel;
+		}
+	}
+}
@@ -0,0 +1,309 @@
+/*
+ * Copyright (C) 2017 Thien Le, Frederic Stahl - University of Reading, UK
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package moa.classifiers.rules;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import moa.classifiers.rules.GeRules.Rule;
+import moa.classifiers.rules.GeRules.RuleTerm;
+import org.junit.Test;
+import weka.core.Attribute;
+import weka.core.DenseInstance;
+import weka.core.Instance;
+import weka.core.Instances;
+
+// Lookups of the rule index compared with going through every rule, on random rules over
+// two numeric and one nominal attribute with bounds from a small grid, so intervals share
+// bounds, while rules are added and removed.
+public class RuleIndexTest {
+
+	static final int NO_RULES = 300;
+
+	final Instances header = header();
+	final GeRules learner = new GeRules();
+	final Random random = new Random(17);
+
+	@Test
+	public void coveredRulesAreTheRulesCoveringTheInstance(){
+
+		RuleIndex ruleIndex = new RuleIndex();
+		List<Rule> rules = addRandomRules(ruleIndex);
+
+		for (int round = 0; round < 4; round++) {
+			for (int i = 0; i < 200; i++) {
+				Instance instance = randomInstance();
+				List<Rule> expected = new ArrayList<>();
+				for (Rule rule : rules) {
+					if(rule.coveredByRule(instance)){
+						expected.add(rule);
+					}
+				}
+				assertEquals(expected, ruleIndex.coveredRules(instance));
+			}
+			removeRandomRules(ruleIndex, rules);
+		}
+	}
+
+	@Test
+	public void lookupsSeeRulesAddedAndRemovedInAnyOrder(){
+
+		RuleIndex ruleIndex = new RuleIndex(true);
+		List<Rule> rules = new ArrayList<>();
+		long nextRuleId = 0;
+
+		// few rules removed at a time leave tombstones, rules removed before a lookup never
+		// make it into the tree
+		for (int step = 0; step < 3000; step++) {
+			int operation = random.nextInt(10);
+			if(operation < 4 || rules.isEmpty()){
+				Rule rule = randomRule(nextRuleId++);
+				rules.add(rule);
+				ruleIndex.add(rule);
+			}else if(operation < 7){
+				Rule rule = rules.remove(random.nextInt(rules.size()));
+				assertTrue(ruleIndex.remove(rule));
+				assertFalse(ruleIndex.remove(rule));
+			}else{
+				Instance instance = randomInstance();
+				List<Rule> expected = new ArrayList<>();
+				for (Rule rule : rules) {
+					if(rule.coveredByRule(instance)){
+						expected.add(rule);
+					}
+				}
+				assertEquals(expected, ruleIndex.coveredRules(instance));
+			}
+			assertEquals(rules.size(), ruleIndex.size());
+		}
+
+		for (Rule rule : new ArrayList<>(rules)) {
+			assertTrue(ruleIndex.remove(rule));
+		}
+		assertTrue(ruleIndex.numericTrees.isEmpty());
+		assertTrue(ruleIndex.termBuckets.isEmpty());
+	}
+
+	@Test
+	public void treeIsCompactedOnceTombstonesPileUp(){
+
+		RuleIndex.IntervalTree intervalTree = new RuleIndex.IntervalTree();
+		List<Rule> rules = new ArrayList<>();
+		for (int i = 0; i < 100; i++) {
+			Rule rule = rule(i, numeric(0, i % 10, 20.0d));
+			rules.add(rule);
+			intervalTree.add(rule, i % 10, 20.0d);
+		}
+
+		Instance instance = new DenseInstance(1.0d, new double[]{15.0d, 0.0d, 0.0d, 0.0d});
+		instance.setDataset(header);
+
+		List<Rule> stabbed = new ArrayList<>();
+		intervalTree.stab(15.0d, instance, stabbed);
+		assertEquals(100, intervalTree.sortedRules.length);
+
+		// below a quarter the tombstones stay
+		for (int i = 0; i < 24; i++) {
+			assertTrue(intervalTree.remove(rules.get(i), i % 10));
+		}
+		intervalTree.stab(15.0d, instance, stabbed);
+		assertEquals(100, intervalTree.sortedRules.length);
+		assertEquals(24, intervalTree.noTombstones);
+
+		assertTrue(intervalTree.remove(rules.get(24), 4.0d));
+		stabbed.clear();
+		intervalTree.stab(15.0d, instance, stabbed);
+		assertEquals(75, intervalTree.sortedRules.length);
+		assertEquals(0, intervalTree.noTombstones);
+		assertEquals(75, stabbed.size());
+		for (int i = 1; i < intervalTree.lowerBounds.length; i++) {
+			assertTrue(intervalTree.lowerBounds[i - 1] <= intervalTree.lowerBounds[i]);
+		}
+	}
+
+	@Test
+	public void sortedOrderIsStable(){
+
+		double[] keys = new double[257];
+		for (int i = 0; i < keys.length; i++) {
+			keys[i] = random.nextInt(20);
+		}
+		int[] order = RuleIndex.IntervalTree.sortedOrder(keys, keys.length);
+		for (int i = 1; i < order.length; i++) {
+			assertTrue(keys[order[i - 1]] < keys[order[i]] || (keys[order[i - 1]] == keys[order[i]] && order[i - 1] < order[i]));
+		}
+		assertEquals(0, RuleIndex.IntervalTree.sortedOrder(keys, 0).length);
+	}
+
+	@Test
+	public void candidatesHoldEveryRedundantRule(){
+
+		RuleIndex ruleIndex = new RuleIndex(true);
+		List<Rule> rules = addRandomRules(ruleIndex);
+
+		for (int round = 0; round < 4; round++) {
+			int noSubsuming = 0;
+			int noSubsumed = 0;
+			for (int i = 0; i < 300; i++) {
+
+				RuleKey key = randomRule(i).key();
+
+				List<Rule> subsumingCandidates = new ArrayList<>();
+				ruleIndex.subsumingCandidates(key, subsumingCandidates);
+				Set<Rule> subsuming = identitySet(subsumingCandidates);
+
+				List<Rule> subsumedCandidates = ruleIndex.subsumedCandidates(key);
+				if(subsumedCandidates == null){
+					subsumedCandidates = rules;
+				}
+				Set<Rule> subsumed = identitySet(subsumedCandidates);
+
+				for (Rule rule : rules) {
+					if(rule.key().subsumes(key)){
+						assertTrue(subsuming.contains(rule));
+						noSubsuming++;
+					}
+					if(key.subsumes(rule.key())){
+						assertTrue(subsumed.contains(rule));
+						noSubsumed++;
+					}
+				}
+
+				// in rules library order
+				for (int j = 1; j < subsumedCandidates.size(); j++) {
+					assertTrue(subsumedCandidates.get(j - 1).ruleId < subsumedCandidates.get(j).ruleId);
+				}
+			}
+			assertTrue(noSubsuming > 0);
+			assertTrue(noSubsumed > 0);
+			removeRandomRules(ruleIndex, rules);
+		}
+	}
+
+	@Test
+	public void numericAnchorsContainingAnInterval(){
+
+		RuleIndex ruleIndex = new RuleIndex(true);
+		Rule wide = rule(0, numeric(0, 1.0d, 4.0d));
+		Rule narrow = rule(1, numeric(0, 2.0d, 3.0d));
+		Rule sameUpperBound = rule(2, numeric(0, 0.0d, 3.0d));
+		Rule otherAttribute = rule(3, numeric(1, 0.0d, 9.0d));
+		for (Rule rule : Arrays.asList(wide, narrow, sameUpperBound, otherAttribute)) {
+			ruleIndex.add(rule);
+		}
+
+		List<Rule> candidates = new ArrayList<>();
+		ruleIndex.subsumingCandidates(rule(4, numeric(0, 2.0d, 3.0d)).key(), candidates);
+		Collections.sort(candidates, RuleIndex.LIBRARY_ORDER);
+		assertEquals(Arrays.asList(wide, narrow, sameUpperBound), candidates);
+
+		assertEquals(Arrays.asList(wide, narrow, sameUpperBound), ruleIndex.subsumedCandidates(rule(5, numeric(0, 0.0d, 4.0d)).key()));
+		assertEquals(Collections.emptyList(), ruleIndex.subsumedCandidates(rule(6, nominal(1)).key()));
+	}
+
+	private List<Rule> addRandomRules(RuleIndex ruleIndex){
+
+		List<Rule> rules = new ArrayList<>();
+		for (int i = 0; i < NO_RULES; i++) {
+			Rule rule = randomRule(i);
+			rules.add(rule);
+			ruleIndex.add(rule);
+		}
+		return rules;
+	}
+
+	private void removeRandomRules(RuleIndex ruleIndex, List<Rule> rules){
+
+		for (int i = 0; i < rules.size() / 3; i++) {
+			Rule rule = rules.remove(random.nextInt(rules.size()));
+			assertTrue(ruleIndex.remove(rule));
+		}
+		assertEquals(rules.size(), ruleIndex.size());
+	}
+
+	private Rule randomRule(long ruleId){
+
+		List<RuleTerm> ruleTerms = new ArrayList<>();
+		if(random.nextInt(3) == 0){
+			ruleTerms.add(nominal(random.nextInt(3)));
+		}
+		for (int attributeIndex = 0; attributeIndex < 2; attributeIndex++) {
+			if(random.nextInt(2) == 0){
+				double lowerBound = random.nextInt(5);
+				ruleTerms.add(numeric(attributeIndex, lowerBound, lowerBound + 1 + random.nextInt(4)));
+			}
+		}
+		if(ruleTerms.isEmpty()){
+			ruleTerms.add(numeric(random.nextInt(2), 1.0d, 3.0d));
+		}
+		Collections.shuffle(ruleTerms, random);
+		return rule(ruleId, ruleTerms.toArray(new RuleTerm[ruleTerms.size()]));
+	}
+
+	private Rule rule(long ruleId, RuleTerm... ruleTerms){
+
+		Rule rule = learner.new Rule(header.numClasses(), (int) (ruleId % 2), header.classAttribute(), 0);
+		rule.ruleId = ruleId;
+		for (RuleTerm ruleTerm : ruleTerms) {
+			rule.addRuleTerm(ruleTerm);
+		}
+		return rule;
+	}
+
+	private RuleTerm numeric(int attributeIndex, double lowerBound, double upperBound){
+		return learner.new RuleTerm(header.attribute(attributeIndex), lowerBound, upperBound);
+	}
+
+	private RuleTerm nominal(int value){
+		return learner.new RuleTerm(header.attribute(2), value);
+	}
+
+	private Instance randomInstance(){
+
+		Instance instance = new DenseInstance(1.0d, new double[]{
+				random.nextInt(19) / 2.0d, random.nextInt(19) / 2.0d, random.nextInt(3), random.nextInt(2)});
+		instance.setDataset(header);
+		return instance;
+	}
+
+	private static Set<Rule> identitySet(List<Rule> rules){
+
+		Set<Rule> set = Collections.newSetFromMap(new IdentityHashMap<Rule, Boolean>());
+		set.addAll(rules);
+		return set;
+	}
+
+	static Instances header(){
+
+		ArrayList<Attribute> attributes = new ArrayList<>();
+		attributes.add(new Attribute("x"));
+		attributes.add(new Attribute("y"));
+		attributes.add(new Attribute("colour", Arrays.asList("r", "g", "b")));
+		attributes.add(new Attribute("class", Arrays.asList("a", "b")));
+		Instances header = new Instances("index", attributes, 0);
+		header.setClassIndex(3);
+		return header;
+	}
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright (C) 2017 Thien Le, Frederic Stahl - University of Reading, UK
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package moa.classifiers.rules;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import moa.classifiers.rules.GeRules.Rule;
+import moa.classifiers.rules.GeRules.RuleTerm;
+import org.junit.Test;
+import weka.core.Instances;
+
+// Rules libraries written to a rule model file and read back or evaluated in place, and
+// files with corrupt records, which have to be rejected naming the record.
+public class RuleModelFileTest {
+
+	@Test
+	public void rulesReadBackVoteLikeTheLearntRules() throws Exception {
+
+		Instances data = TestData.cmc();
+		GeRules learner = train(data);
+		File file = File.createTempFile("rules", ".gerl");
+		try {
+			RuleModelFile.write(learner, data, file);
+
+			GeRules readLearner = new GeRules();
+			readLearner.prepareForUse();
+			RuleModelFile.read(readLearner, data, file);
+			MappedRuleSet mappedRuleSet = new MappedRuleSet(file, data);
+
+			assertEquals(learner.rulesList.size(), readLearner.rulesList.size());
+			assertEquals(learner.rulesList.size(), mappedRuleSet.numRules());
+			CompiledRuleSet learntRules = new CompiledRuleSet(learner.rulesList);
+			CompiledRuleSet readRules = new CompiledRuleSet(readLearner.rulesList);
+			for (int i = 0; i < data.numInstances(); i++) {
+				double[] expected = new double[data.numClasses()];
+				learntRules.vote(data.instance(i), expected);
+				double[] read = new double[data.numClasses()];
+				readRules.vote(data.instance(i), read);
+				double[] mapped = new double[data.numClasses()];
+				mappedRuleSet.vote(data.instance(i), mapped);
+				assertArrayEquals(expected, read, 0.0d);
+				assertArrayEquals(expected, mapped, 0.0d);
+			}
+		} finally {
+			file.delete();
+		}
+	}
+
+	@Test
+	public void corruptRecordsAreRejected() throws Exception {
+
+		Instances data = TestData.cmc();
+		GeRules learner = train(data);
+		int nominalTerm = termOf(learner, RuleTerm.CATEGORICAL_ATTRIBUTE);
+		int numericTerm = termOf(learner, RuleTerm.NUMERIC_ATTRIBUTE);
+		int rule = learner.rulesList.size() - 1;
+		int ruleOffset = RuleModelFile.HEADER_BYTES + rule * RuleModelFile.RULE_RECORD_BYTES;
+		int termsOffset = RuleModelFile.HEADER_BYTES + learner.rulesList.size() * RuleModelFile.RULE_RECORD_BYTES;
+		int nominalTermOffset = termsOffset + nominalTerm * RuleModelFile.TERM_RECORD_BYTES;
+		int numericTermOffset = termsOffset + numericTerm * RuleModelFile.TERM_RECORD_BYTES;
+
+		// without the header
+		assertRejected(learner, data, ruleOffset + RuleModelFile.CLASS_LABEL_OFFSET, data.numClasses(), false, "Rule " + rule);
+		assertRejected(learner, data, ruleOffset + RuleModelFile.CLASS_LABEL_OFFSET, -1, false, "Rule " + rule);
+		assertRejected(learner, data, ruleOffset + RuleModelFile.FIRST_TERM_OFFSET, Integer.MAX_VALUE, false, "Rule " + rule);
+		assertRejected(learner, data, ruleOffset + RuleModelFile.RULE_NO_TERMS_OFFSET, -1, false, "Rule " + rule);
+		assertRejected(learner, data, numericTermOffset + RuleModelFile.ATTRIBUTE_INDEX_OFFSET, data.numAttributes(), false, "Term " + numericTerm);
+		assertRejected(learner, data, numericTermOffset + RuleModelFile.ATTRIBUTE_INDEX_OFFSET, data.classIndex(), false, "Term " + numericTerm);
+		assertRejected(learner, data, numericTermOffset + RuleModelFile.TERM_TYPE_OFFSET, 7, false, "Term " + numericTerm);
+
+		// against the header: types of the attributes and value indices
+		assertRejected(learner, data, nominalTermOffset + RuleModelFile.TERM_TYPE_OFFSET, RuleTerm.NUMERIC_ATTRIBUTE, true, "Term " + nominalTerm);
+		assertRejected(learner, data, numericTermOffset + RuleModelFile.TERM_TYPE_OFFSET, RuleTerm.CATEGORICAL_ATTRIBUTE, true, "Term " + numericTerm);
+		assertRejected(learner, data, nominalTermOffset + RuleModelFile.LOWER_BOUND_OFFSET, 4.0d, true, "Term " + nominalTerm);
+		assertRejected(learner, data, nominalTermOffset + RuleModelFile.LOWER_BOUND_OFFSET, 0.5d, true, "Term " + nominalTerm);
+	}
+
+	// the file with the int or double at offset overwritten has to be rejected by reading it
+	// and by mapping it (with or without the header unless headerOnly), naming the record
+	private static void assertRejected(GeRules learner, Instances data, int offset, Number value, boolean headerOnly, String record)
+			throws IOException {
+
+		File file = File.createTempFile("rules", ".gerl");
+		try {
+			RuleModelFile.write(learner, data, file);
+			try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+				randomAccessFile.seek(offset);
+				if(value instanceof Double){
+					randomAccessFile.writeDouble(value.doubleValue());
+				}else{
+					randomAccessFile.writeInt(value.intValue());
+				}
+			}
+
+			GeRules readLearner = new GeRules();
+			readLearner.prepareForUse();
+			try {
+				RuleModelFile.read(readLearner, data, file);
+				fail(record + " was read");
+			} catch (IOException e) {
+				assertTrue(e.getMessage(), e.getMessage().startsWith(record + " "));
+			}
+			assertTrue(readLearner.rulesList.isEmpty());
+
+			try {
+				new MappedRuleSet(file, data);
+				fail(record + " was mapped");
+			} catch (IOException e) {
+				assertTrue(e.getMessage(), e.getMessage().startsWith(record + " "));
+			}
+
+			if(!headerOnly){
+				try {
+					new MappedRuleSet(file);
+					fail(record + " was mapped without header");
+				} catch (IOException e) {
+					assertTrue(e.getMessage(), e.getMessage().startsWith(record + " "));
+				}
+			}
+		} finally {
+			file.delete();
+		}
+	}
+
+	// position of the first term of the type in the file
+	private static int termOf(GeRules learner, int termType){
+
+		int term = 0;
+		for (Rule rule : learner.rulesList) {
+			for (RuleTerm ruleTerm : rule.listOfRuleTerm) {
+				if(ruleTerm.attribute_type == termType){
+					return term;
+				}
+				term++;
+			}
+		}
+		throw new AssertionError("no term of type " + termType);
+	}
+
+	private static GeRules train(Instances data){
+
+		GeRules learner = new GeRules();
+		learner.prepareForUse();
+		for (int i = 0; i < data.numInstances(); i++) {
+			learner.trainOnInstanceImpl(data.instance(i));
+		}
+		return learner;
+	}
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2017 Thien Le, Frederic Stahl - University of Reading, UK
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package moa.classifiers.rules;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+import weka.core.Attribute;
+import weka.core.Instance;
+import weka.core.Instances;
+
+public class SlidingWindowTest {
+
+	static final int WINDOW_SIZE = 100;
+
+	@Test
+	public void statisticsOfWrappedWindowEqualRecount() throws Exception {
+
+		Instances data = TestData.cmc();
+
+		WindowStore window = new WindowStore(WINDOW_SIZE, true);
+		for (int i = 0; i < data.numInstances(); i++) {
+			window.add(data.instance(i));
+		}
+		assertEquals(WINDOW_SIZE, window.size());
+
+		// the last instances of the stream counted from scratch
+		WindowStore recount = new WindowStore(WINDOW_SIZE);
+		for (int i = data.numInstances() - WINDOW_SIZE; i < data.numInstances(); i++) {
+			recount.add(data.instance(i));
+		}
+
+		assertSameStatistics(recount, window);
+	}
+
+	@Test
+	public void overwrittenRowsAreTakenOutOfStatistics() throws Exception {
+
+		Instances data = TestData.cmc();
+
+		// rows overwritten with rows of another store
+		WindowStore source = new WindowStore(data.numInstances());
+		WindowStore window = new WindowStore(WINDOW_SIZE);
+		for (int i = 0; i < data.numInstances(); i++) {
+			source.add(data.instance(i));
+			if(i < WINDOW_SIZE){
+				window.add(data.instance(i));
+			}
+		}
+		for (int row = 0; row < WINDOW_SIZE; row += 3) {
+			window.set(row, source, data.numInstances() - 1 - row);
+		}
+
+		WindowStore recount = new WindowStore(WINDOW_SIZE);
+		for (int row = 0; row < WINDOW_SIZE; row++) {
+			recount.add(data.instance(row % 3 == 0 ? data.numInstances() - 1 - row : row));
+		}
+
+		assertSameStatistics(recount, window);
+	}
+
+	@Test
+	public void fadedStatisticsCountEveryInstanceOnce() throws Exception {
+
+		Instances data = TestData.cmc();
+
+		// nothing is faded away, so the statistics are those of every instance taken in
+		GeRules learner = new GeRules();
+		learner.slidingWindowsSizeOption.setValue(WINDOW_SIZE);
+		learner.slideStepOption.setValue(WINDOW_SIZE / 4);
+		learner.gaussianFadingFactorOption.setValue(1.0d);
+		learner.prepareForUse();
+
+		// an induction takes in the instances added since the last one which are still in the window
+		WindowStore takenIn = new WindowStore(data.numInstances());
+		List<Instance> added = new ArrayList<>();
+		for (int i = 0; i < data.numInstances(); i++) {
+			int windowAdditions = learner.windowAdditions;
+			int windowSize = learner.slidingWindowsBuffer.size();
+			learner.trainOnInstanceImpl(data.instance(i));
+			if(learner.windowAdditions != windowAdditions || learner.slidingWindowsBuffer.size() != windowSize){
+				added.add(data.instance(i));
+			}
+			if(learner.fadingWindowAdditions.size() == 0 && !added.isEmpty()){
+				for (Instance instance : added.subList(Math.max(added.size() - WINDOW_SIZE, 0), added.size())) {
+					takenIn.add(instance);
+				}
+				added.clear();
+			}
+		}
+		assertTrue(takenIn.size() > 2 * WINDOW_SIZE);
+
+		assertSameGaussianStatistics(takenIn, takenIn.gaussianStatistics(), learner.fadedGaussianStatistics);
+	}
+
+	static void assertSameStatistics(WindowStore expected, WindowStore actual){
+
+		assertSameGaussianStatistics(expected, expected.gaussianStatistics(), actual.gaussianStatistics());
+
+		for (Attribute attribute : expected.attributes()) {
+			if(attribute.isNominal()){
+				assertArrayEquals(attribute.name(), expected.nominalClassCounts(attribute.index()), actual.nominalClassCounts(attribute.index()));
+			}
+		}
+	}
+
+	static void assertSameGaussianStatistics(WindowStore instancesStore, GaussianStatistics expected, GaussianStatistics actual){
+
+		for (Attribute attribute : instancesStore.attributes()) {
+			if(attribute.isNominal()){
+				continue;
+			}
+			for (int classLabel = 0; classLabel < instancesStore.numClasses(); classLabel++) {
+				String name = attribute.name() + " class " + classLabel;
+				int index = attribute.index();
+				assertEquals(name, expected.weight(index, classLabel), actual.weight(index, classLabel), 0.0d);
+				assertEquals(name, expected.mean(index, classLabel), actual.mean(index, classLabel), 1e-9);
+				assertEquals(name, expected.standardDeviation(index, classLabel), actual.standardDeviation(index, classLabel), 1e-9);
+			}
+		}
+	}
+}
@@ -0,0 +1,178 @@
+/*
+ * Copyright (C) 2017 Thien Le, Frederic Stahl - University of Reading, UK
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package moa.classifiers.rules;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Test;
+import weka.core.Attribute;
+import weka.core.DenseInstance;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.SparseInstance;
+
+// Rows overwritten over and over leave old entries behind until the entry arrays run full
+// and are rebuilt from the rows in use; the rows and their columns have to come through.
+public class SparseRowsTest {
+
+	static final int NUM_ATTRIBUTES = 12;
+
+	static final int NO_ROWS = 20;
+
+	@Test
+	public void overwrittenRowsSurviveRebuilds(){
+
+		Instances header = header();
+		Random random = new Random(5);
+
+		SparseRows sparseRows = new SparseRows(NUM_ATTRIBUTES, NO_ROWS);
+		double[][] expected = new double[NO_ROWS][];
+		for (int row = 0; row < NO_ROWS; row++) {
+			expected[row] = randomValues(random);
+			sparseRows.setRow(row, instance(header, expected[row]));
+		}
+
+		int firstLength = sparseRows.entryIndices.length;
+		for (int i = 0; i < 5000; i++) {
+			int row = random.nextInt(NO_ROWS);
+			expected[row] = randomValues(random);
+			sparseRows.setRow(row, instance(header, expected[row]));
+			if(i % 97 == 0){
+				assertRows(expected, sparseRows);
+			}
+		}
+		assertRows(expected, sparseRows);
+
+		// the entry arrays were rebuilt from the rows in use rather than grown for every row set
+		assertTrue(sparseRows.entryIndices.length <= 4 * NO_ROWS * NUM_ATTRIBUTES + firstLength);
+	}
+
+	@Test
+	public void rowsCopiedFromOtherRowsSurviveRebuilds(){
+
+		Instances header = header();
+		Random random = new Random(9);
+
+		SparseRows source = new SparseRows(NUM_ATTRIBUTES, NO_ROWS);
+		double[][] sourceValues = new double[NO_ROWS][];
+		for (int row = 0; row < NO_ROWS; row++) {
+			sourceValues[row] = randomValues(random);
+			source.setRow(row, instance(header, sourceValues[row]));
+		}
+
+		SparseRows sparseRows = new SparseRows(NUM_ATTRIBUTES, NO_ROWS);
+		double[][] expected = new double[NO_ROWS][];
+		for (int row = 0; row < NO_ROWS; row++) {
+			expected[row] = new double[NUM_ATTRIBUTES];
+			sparseRows.setRow(row, instance(header, expected[row]));
+		}
+		for (int i = 0; i < 2000; i++) {
+			int row = random.nextInt(NO_ROWS);
+			int sourceRow = random.nextInt(NO_ROWS);
+			expected[row] = sourceValues[sourceRow];
+			sparseRows.setRow(row, source, sourceRow);
+		}
+		assertRows(expected, sparseRows);
+	}
+
+	@Test
+	public void clearedRowsHaveNoEntries(){
+
+		Instances header = header();
+		Random random = new Random(3);
+
+		SparseRows sparseRows = new SparseRows(NUM_ATTRIBUTES, NO_ROWS);
+		for (int row = 0; row < NO_ROWS; row++) {
+			sparseRows.setRow(row, instance(header, randomValues(random)));
+		}
+		sparseRows.clear();
+
+		double[][] expected = new double[NO_ROWS][NUM_ATTRIBUTES];
+		assertRows(expected, sparseRows);
+		assertEquals(0, sparseRows.columns(NO_ROWS).end(NUM_ATTRIBUTES - 1));
+	}
+
+	static void assertRows(double[][] expected, SparseRows sparseRows){
+
+		// rows: entries in ascending attribute index order, zeros without an entry
+		for (int row = 0; row < expected.length; row++) {
+			double[] values = new double[NUM_ATTRIBUTES];
+			int lastIndex = -1;
+			for (int entry = sparseRows.rowStart(row); entry < sparseRows.rowEnd(row); entry++) {
+				int index = sparseRows.index(entry);
+				assertTrue(index > lastIndex);
+				assertTrue(sparseRows.value(entry) != 0.0d);
+				values[index] = sparseRows.value(entry);
+				lastIndex = index;
+			}
+			assertEquals(Arrays.toString(expected[row]), Arrays.toString(values));
+			for (int attributeIndex = 0; attributeIndex < NUM_ATTRIBUTES; attributeIndex++) {
+				assertEquals(expected[row][attributeIndex], sparseRows.value(row, attributeIndex), 0.0d);
+			}
+		}
+
+		// columns: entries of an attribute in ascending row order
+		SparseRows.Columns columns = sparseRows.columns(expected.length);
+		for (int attributeIndex = 0; attributeIndex < NUM_ATTRIBUTES; attributeIndex++) {
+			double[] values = new double[expected.length];
+			int lastRow = -1;
+			for (int entry = columns.start(attributeIndex); entry < columns.end(attributeIndex); entry++) {
+				assertTrue(columns.row(entry) > lastRow);
+				values[columns.row(entry)] = columns.value(entry);
+				lastRow = columns.row(entry);
+			}
+			for (int row = 0; row < expected.length; row++) {
+				assertEquals(expected[row][attributeIndex], values[row], 0.0d);
+			}
+		}
+	}
+
+	// mostly zeros, some missing values
+	static double[] randomValues(Random random){
+
+		double[] values = new double[NUM_ATTRIBUTES];
+		for (int i = 0; i < NUM_ATTRIBUTES; i++) {
+			int draw = random.nextInt(10);
+			values[i] = draw < 6 ? 0.0d : draw == 9 ? Double.NaN : draw - 7.5d;
+		}
+		return values;
+	}
+
+	static Instance instance(Instances header, double[] values){
+
+		double[] instanceValues = Arrays.copyOf(values, NUM_ATTRIBUTES + 1);
+		Instance instance = new SparseInstance(new DenseInstance(1.0d, instanceValues));
+		instance.setDataset(header);
+		return instance;
+	}
+
+	static Instances header(){
+
+		ArrayList<Attribute> attributes = new ArrayList<>();
+		for (int i = 0; i < NUM_ATTRIBUTES; i++) {
+			attributes.add(new Attribute("x" + i));
+		}
+		attributes.add(new Attribute("class", Arrays.asList("a", "b")));
+		Instances header = new Instances("rows", attributes, 0);
+		header.setClassIndex(NUM_ATTRIBUTES);
+		return header;
+	}
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2017 Thien Le, Frederic Stahl - University of Reading, UK
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package moa.classifiers.rules;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import org.junit.Test;
+import weka.core.Instance;
+import weka.core.Instances;
+
+// Rows read from the mapped chunks compared with the instances Weka reads from the same file.
+public class StreamingInstanceReaderTest {
+
+	@Test
+	public void weightsAreReadLikeWeka() throws Exception {
+
+		Instances expected = TestData.weighted();
+		try (StreamingInstanceReader reader = StreamingInstanceReader.arff(new File(TestData.WEIGHTED))) {
+			assertSameInstances(expected, reader);
+		}
+
+		double[] weights = new double[expected.numInstances()];
+		for (int i = 0; i < weights.length; i++) {
+			weights[i] = expected.instance(i).weight();
+		}
+		assertEquals(Arrays.toString(new double[]{1, 2, 0.25, 4.5, 1, 3, 0.5, 0.1, 6, 0.75}), Arrays.toString(weights));
+	}
+
+	@Test
+	public void rowsAcrossChunksAreReadLikeWeka() throws Exception {
+
+		assertSameInstancesInSmallChunks(TestData.CMC, TestData.cmc());
+		assertSameInstancesInSmallChunks(TestData.SPARSE, TestData.sparse());
+		assertSameInstancesInSmallChunks(TestData.WEIGHTED, TestData.weighted());
+	}
+
+	@Test
+	public void chunksAreReleasedOnceRead() throws Exception {
+
+		File file = new File(TestData.CMC);
+		StreamingInstanceReader reader = StreamingInstanceReader.arff(file, 4096);
+		try {
+			long lastChunkStart = reader.chunkStart;
+			while(reader.next() != null){
+				// the reader holds the chunk it reads from only
+				assertTrue(reader.position - reader.chunkStart <= reader.chunk.limit());
+				assertTrue(reader.chunkStart >= lastChunkStart);
+				lastChunkStart = reader.chunkStart;
+			}
+			assertNull(reader.chunk);
+			assertEquals((file.length() + 4095) / 4096, reader.chunksMapped);
+			assertNull(reader.next());
+		} finally {
+			reader.close();
+		}
+		assertNull(reader.chunk);
+	}
+
+	// chunks of a few bytes, so values, weights and line endings are split across chunks
+	private static void assertSameInstancesInSmallChunks(String path, Instances expected) throws IOException {
+
+		for (long mapChunkBytes : new long[]{1, 7, 61}) {
+			try (StreamingInstanceReader reader = StreamingInstanceReader.arff(new File(path), mapChunkBytes)) {
+				assertSameInstances(expected, reader);
+				assertTrue(reader.chunksMapped > 1);
+			}
+		}
+	}
+
+	private static void assertSameInstances(Instances expected, StreamingInstanceReader reader) throws IOException {
+
+		for (int i = 0; i < expected.numInstances(); i++) {
+			Instance instance = reader.next();
+			assertEquals(Arrays.toString(expected.instance(i).toDoubleArray()), Arrays.toString(instance.toDoubleArray()));
+			assertEquals(expected.instance(i).weight(), instance.weight(), 0.0d);
+		}
+		assertNull(reader.next());
+		assertEquals(expected.numInstances(), reader.rowsRead());
+	}
+}
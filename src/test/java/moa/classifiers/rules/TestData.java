@@ -0,0 +1,56 @@
+/*
+ * Copyright (C) 2017 Thien Le, Frederic Stahl - University of Reading, UK
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package moa.classifiers.rules;
+
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import weka.core.Instances;
+
+// data sets of the tests, paths are relative to the project directory
+class TestData {
+
+	static final String CMC = "data/cmc.arff";
+
+	// mostly zero numeric attributes in sparse ARFF format
+	static final String SPARSE = "src/test/resources/sparse.arff";
+
+	// dense and sparse rows with instance weights
+	static final String WEIGHTED = "src/test/resources/weighted.arff";
+
+	// cmc with the last attribute as class
+	static Instances cmc() throws IOException {
+		return read(CMC);
+	}
+
+	static Instances sparse() throws IOException {
+		return read(SPARSE);
+	}
+
+	static Instances weighted() throws IOException {
+		return read(WEIGHTED);
+	}
+
+	static Instances read(String path) throws IOException {
+
+		try (Reader reader = new FileReader(path)) {
+			Instances data = new Instances(reader);
+			data.setClassIndex(data.numAttributes() - 1);
+			return data;
+		}
+	}
+}